@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Kernels that use the SIMD instructions of the cpu, through the 
+ * jdk.incubator.vector module.  This class is built from its own source tree,
+ * with --add-modules jdk.incubator.vector, into the versioned part of our 
+ * multi-release jar; Kernels.get selects it whenever the module is present
+ * at runtime, so it must match the scalar kernels bit for bit, which 
+ * TestVectorKernels checks.
+ * 
+ * Every operation here is an IEEE single-precision add, subtract, multiply,
+ * divide, or square root, or a min, max, abs, or negate, so the results are
+ * exactly those of the scalar loops.  Modulus (there is no vector remainder)
+ * and Squircle (there is no vector pow that is exact with Math.pow) are left
+ * to the scalar kernels.
+ */
+final class VectorKernels extends Kernels {
+	private static final VectorSpecies<Float> S = FloatVector.SPECIES_PREFERRED;
+	
+	@Override
+	void absolute(float[] out, float[] A, int n) {
+		int k = 0;
+		for(int bound = S.loopBound(n); k < bound; k += S.length()) {
+			FloatVector.fromArray(S, A, k).abs().intoArray(out, k);
+		}
+		for(; k < n; k++) {
+			out[k] = Math.abs(A[k]);
+		}
+	}
+	
+	@Override
+	void invert(float[] out, float[] A, int n) {
+		int k = 0;
+		for(int bound = S.loopBound(n); k < bound; k += S.length()) {
+			FloatVector.fromArray(S, A, k).neg().intoArray(out, k);
+		}
+		for(; k < n; k++) {
+			out[k] = -A[k];
+		}
+	}
+	
+	@Override
+	void add(float[] out, float[] A, float[] B, int n) {
+		int k = 0;
+		for(int bound = S.loopBound(n); k < bound; k += S.length()) {
+			FloatVector a = FloatVector.fromArray(S, A, k);
+			FloatVector b = FloatVector.fromArray(S, B, k);
+			a.add(b).div(2.0f).intoArray(out, k);
+		}
+		for(; k < n; k++) {
+			out[k] = (A[k] + B[k]) / 2.0f;
+		}
+	}
+	
+	@Override
+	void divide(float[] out, float[] A, float[] B, int n) {
+		int k = 0;
+		for(int bound = S.loopBound(n); k < bound; k += S.length()) {
+			FloatVector a = FloatVector.fromArray(S, A, k);
+			FloatVector b = FloatVector.fromArray(S, B, k);
+			FloatVector q = a.div(b).max(-1.0f).min(1.0f);
+			q.blend(1.0f, b.eq(0.0f)).intoArray(out, k);
+		}
+		for(; k < n; k++) {
+			if(B[k] == 0.0f)
+				out[k] = 1.0f;
+			else
+				out[k] = OperationNode.clampf(A[k] / B[k], -1.0f, 1.0f);
+		}
+	}
+	
+	@Override
+	void multiply(float[] out, float[] A, float[] B, int n) {
+		int k = 0;
+		for(int bound = S.loopBound(n); k < bound; k += S.length()) {
+			FloatVector a = FloatVector.fromArray(S, A, k);
+			FloatVector b = FloatVector.fromArray(S, B, k);
+			a.mul(b).intoArray(out, k);
+		}
+		for(; k < n; k++) {
+			out[k] = A[k] * B[k];
+		}
+	}
+
+	@Override
+	void ellipse(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float fx0, float fy0, float fx1, float fy1, float sz, float fringe) {
+		int bound = S.loopBound(w);
+		float szFringe = sz + fringe;
+		for(int j = 0; j < rows; j++) {
+			float pY = Y[y0 + j];
+			float dy0 = fy0 - pY;
+			float dy1 = fy1 - pY;
+			int k = j * w;
+			int i = 0;
+			for(; i < bound; i += S.length()) {
+				FloatVector pX = FloatVector.fromArray(S, X, i);
+				FloatVector dx0 = FloatVector.broadcast(S, fx0).sub(pX);
+				FloatVector dx1 = FloatVector.broadcast(S, fx1).sub(pX);
+				FloatVector d0 = dx0.mul(dx0).add(dy0 * dy0).sqrt();
+				FloatVector d1 = dx1.mul(dx1).add(dy1 * dy1).sqrt();
+				FloatVector dist = d0.add(d1);
+				FloatVector edge = FloatVector.broadcast(S, 1.0f).sub(dist.sub(sz).div(fringe).mul(2.0f));
+				VectorMask<Float> inside = dist.lt(sz);
+				VectorMask<Float> near = dist.lt(szFringe);
+				FloatVector.broadcast(S, -1.0f).blend(edge, near).blend(1.0f, inside).intoArray(out, k + i);
+			}
+			for(; i < w; i++) {
+				float pX = X[i];
+				float dist = OperationNode.distance(pX, pY, fx0, fy0) + OperationNode.distance(pX, pY, fx1, fy1);
+				if(dist < sz) {
+					out[k + i] = 1.0f;
+				} else if(dist < szFringe) {
+					out[k + i] = 1.0f - (dist - sz) / fringe * 2.0f; 
+				} else {
+					out[k + i] = -1.0f;
+				}
+			}
+		}
+	}
+	
+	@Override
+	void linearGradient1(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float px0, float py0, float len, float sa, float ca) {
+		int bound = S.loopBound(w);
+		for(int j = 0; j < rows; j++) {
+			float pY = Y[y0 + j] - py0;
+			float pYca = pY * ca;
+			int k = j * w;
+			int i = 0;
+			for(; i < bound; i += S.length()) {
+				FloatVector pX = FloatVector.fromArray(S, X, i).sub(px0);
+				FloatVector color = pX.mul(sa).add(pYca).div(len).add(1.0f);
+				color.sub(0.5f).mul(2.0f).max(-1.0f).min(1.0f).intoArray(out, k + i);
+			}
+			for(; i < w; i++) {
+				float pX = X[i] - px0;
+				float color = (pX * sa + pYca) / len + 1.0f;
+				color -= 0.5f;
+				color *= 2.0f;
+				out[k + i] = OperationNode.clampf(color, -1.0f, 1.0f);
+			}
+		}
+	}
+	
+	@Override
+	void radialGradient(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float x, float y, float sw, float sh, float ca, float sa) {
+		float twoOverSqrtTwo = (float)(2.0 / Math.sqrt(2.0));
+		int bound = S.loopBound(w);
+		for(int j = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			float pysa = py * sa;
+			float pyca = py * ca;
+			int k = j * w;
+			int i = 0;
+			for(; i < bound; i += S.length()) {
+				FloatVector px = FloatVector.fromArray(S, X, i).sub(x);
+				FloatVector x2 = px.mul(ca).sub(pysa).div(sw);
+				FloatVector y2 = px.mul(sa).add(pyca).div(sh);
+				FloatVector tmp = x2.mul(x2).add(y2.mul(y2)).sqrt().neg().mul(twoOverSqrtTwo).add(1.0f);
+				tmp.max(-1.0f).min(1.0f).intoArray(out, k + i);
+			}
+			for(; i < w; i++) {
+				float px = X[i] - x;
+				float x2 = ((px * ca) - pysa) / sw;
+				float y2 = ((px * sa) + pyca) / sh;
+				float tmp = -(float)Math.sqrt(x2 * x2 + y2 * y2) * twoOverSqrtTwo + 1.0f;
+				out[k + i] = OperationNode.clampf(tmp, -1.0f, 1.0f);
+			}
+		}
+	}
+}
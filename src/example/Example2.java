@@ -4,8 +4,6 @@ import java.awt.image.BufferedImage;
 import java.security.NoSuchAlgorithmException;
 import java.util.Vector;
 
-import vash.ImageParameters;
-import vash.Output;
 import vash.Tree;
 import vash.TreeParameters;
 
@@ -49,24 +47,14 @@ public class Example2 {
 		}
 		Tree tree = new Tree(tp);
 
-		for(int size = 16; size <= 2048; size *= 2) {
-			// The image parameters encapsulate the data we need map the tree
-			//	into a physical image and provides several size-dependent 
-			//	services the tree uses when generating images.
-			ImageParameters ip = new ImageParameters(size, size);
-			tree.setGenerationParameters(ip);
-
-			// The tree provides images as a packed, unstrided array of 24-bit
-			//	BGR pixels.
-			byte[] pix = tree.generateCurrentFrame();
-			
-			// The static dataToImage method of Output builds a BufferedImage 
-			//	stack to interpret our raw pixels.  The BufferedImage does not
-			//	rewrite the pixels, it just gives us an easy-to-use API on
-			//	top of our existing data.
-			BufferedImage img = Output.dataToImage(pix, size, size);
-			
-			// We can now do whatever we want with our image.
+		// Computing every size at once lets the tree share its setup, and,
+		//	with setParallelism, its threads, between all of the sizes.  The
+		//	images are exactly what generateCurrentFrame would compute at 
+		//	each size.
+		BufferedImage[] images = tree.generatePyramid(16, 32, 64, 128, 256, 512, 1024, 2048);
+		
+		// We can now do whatever we want with our images.
+		for(BufferedImage img : images) {
 			mipmaps.add(img);
 		}
 	}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Plane;
+import vash.Quality;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestCompactPlanes {
+	private final ImageParameters ip = new ImageParameters(17, 9, Quality.COMPACT);
+
+	@Test
+	public void testPackRoundTrip() {
+		Plane p = ip.getPlane();
+		int n = p.data.length;
+		for(int k = 0; k < n; k++) {
+			p.data[k] = (float)Math.sin(k * 0.37);
+		}
+		p.data[0] = 0.0f;
+		p.data[1] = 1.0f;
+		p.data[2] = -1.0f;
+		float[] expect = p.data.clone();
+		short[] packed = ip.packPlane(p);
+		Assert.assertNotNull(packed);
+		p = ip.unpackPlane(packed);
+		Assert.assertEquals(0.0f, p.data[0], 0.0f);
+		Assert.assertEquals(1.0f, p.data[1], 0.0f);
+		Assert.assertEquals(-1.0f, p.data[2], 0.0f);
+		for(int k = 0; k < n; k++) {
+			Assert.assertEquals(expect[k], p.data[k], 1.6e-5f);
+		}
+		ip.putPlane(p);
+	}
+
+	@Test
+	public void testPackedArraysAreReused() {
+		Plane p = ip.getPlane();
+		short[] packed = ip.packPlane(p);
+		p = ip.unpackPlane(packed);
+		Assert.assertSame(packed, ip.packPlane(p));
+		ip.putPlane(ip.unpackPlane(packed));
+	}
+
+	@Test
+	public void testSharedAreNotPacked() {
+		Plane p = ip.getPlane();
+		p.share(2);
+		Assert.assertNull(ip.packPlane(p));
+		ip.putPlane(p);
+		ip.putPlane(p);
+	}
+
+	@Test
+	public void testCompactIsClose() throws NoSuchAlgorithmException {
+		long differ = 0;
+		long total = 0;
+		for(int i = 0; i < 10; i++) {
+			Tree tree = new Tree(TreeParameters.createInstance("1.1", ("compact" + i).getBytes()));
+			tree.setGenerationParameters(new ImageParameters(64, 64));
+			byte[] expect = tree.generateCurrentFrame();
+			tree.setGenerationParameters(new ImageParameters(64, 64, Quality.COMPACT));
+			byte[] actual = tree.generateCurrentFrame();
+			for(int k = 0; k < expect.length; k++) {
+				if(expect[k] != actual[k])
+					differ++;
+			}
+			total += expect.length;
+		}
+		Assert.assertTrue(differ + " of " + total + " values differ", differ * 1000 < total);
+	}
+}
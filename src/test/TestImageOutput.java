@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Output;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestImageOutput {
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	private Tree tree(String algo, String data, int w, int h) throws NoSuchAlgorithmException {
+		Tree tree = new Tree(TreeParameters.createInstance(algo, data.getBytes()));
+		tree.setGenerationParameters(new ImageParameters(w, h));
+		return tree;
+	}
+
+	private static byte[] bytes(BufferedImage image) {
+		return ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+	}
+
+	@Test
+	public void testDataToImageWraps() {
+		byte[] pix = new byte[5 * 4 * 3];
+		BufferedImage image = Output.dataToImage(pix, 5, 4);
+		Assert.assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+		Assert.assertSame(pix, bytes(image));
+	}
+
+	@Test
+	public void testImageMatchesFrame() throws NoSuchAlgorithmException {
+		for(String algo : new String[] {"1.1", "1"}) {
+			Tree tree = tree(algo, "image", 100, 70);
+			byte[] expect = tree.generateCurrentFrame();
+			Assert.assertArrayEquals(algo, expect, bytes(tree.generateCurrentImage()));
+			tree.setTileSize(32);
+			tree.setForkJoinPool(POOL);
+			Assert.assertArrayEquals(algo + " (tiled)", expect, bytes(tree.generateCurrentImage()));
+		}
+	}
+
+	@Test
+	public void testCallerImage() throws NoSuchAlgorithmException {
+		Tree tree = tree("1.1", "image", 64, 48);
+		BufferedImage expect = Output.dataToImage(tree.generateCurrentFrame(), 64, 48);
+		BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] data = bytes(image);
+		tree.generateCurrentImage(image);
+		Assert.assertSame(data, bytes(image));
+		Assert.assertArrayEquals(bytes(expect), data);
+
+		image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_ARGB);
+		tree.generateCurrentImage(image);
+		for(int y = 0; y < 48; y++) {
+			for(int x = 0; x < 64; x++) {
+				Assert.assertEquals(expect.getRGB(x, y), image.getRGB(x, y));
+			}
+		}
+
+		BufferedImage parent = new BufferedImage(80, 60, BufferedImage.TYPE_3BYTE_BGR);
+		image = parent.getSubimage(8, 6, 64, 48);
+		tree.generateCurrentImage(image);
+		for(int y = 0; y < 48; y++) {
+			for(int x = 0; x < 64; x++) {
+				Assert.assertEquals(expect.getRGB(x, y), parent.getRGB(x + 8, y + 6));
+			}
+		}
+		Assert.assertEquals(0xFF000000, parent.getRGB(0, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongSize() throws NoSuchAlgorithmException {
+		tree("1.1", "image", 64, 48).generateCurrentImage(new BufferedImage(48, 64, BufferedImage.TYPE_3BYTE_BGR));
+	}
+
+	@Test
+	public void testPyramid() throws NoSuchAlgorithmException {
+		int[] sizes = {16, 33, 64, 7, 130};
+		for(String algo : new String[] {"1.1", "1"}) {
+			Tree tree = new Tree(TreeParameters.createInstance(algo, "pyramid".getBytes()));
+			BufferedImage[] serial = tree.generatePyramid(sizes);
+			tree.setForkJoinPool(POOL);
+			BufferedImage[] parallel = tree.generatePyramid(sizes);
+			tree.setCompiled(true);
+			tree.setTileSize(20);
+			BufferedImage[] compiled = tree.generatePyramid(sizes);
+			Assert.assertEquals(sizes.length, serial.length);
+			for(int n = 0; n < sizes.length; n++) {
+				tree.setGenerationParameters(new ImageParameters(sizes[n], sizes[n]));
+				byte[] expect = tree.generateCurrentFrame();
+				Assert.assertEquals(sizes[n], serial[n].getWidth());
+				Assert.assertArrayEquals(algo + ":" + sizes[n], expect, bytes(serial[n]));
+				Assert.assertArrayEquals(algo + ":" + sizes[n] + " (parallel)", expect, bytes(parallel[n]));
+				Assert.assertArrayEquals(algo + ":" + sizes[n] + " (compiled)", expect, bytes(compiled[n]));
+			}
+		}
+	}
+}
@@ -67,6 +67,32 @@ public class TestOptions {
 		Assert.assertEquals(42, opt.getHeight());
 	}
 
+	@Test
+	public void testSetThreads() {
+		Assert.assertEquals(1, opt.getThreads());
+		opt.setThreads(4);
+		Assert.assertEquals(4, opt.getThreads());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSetThreadsInvalid() {
+		opt.setThreads(0);
+	}
+
+	@Test
+	public void testSetQuality() {
+		Assert.assertEquals(vash.Quality.CANONICAL, opt.getQuality());
+		opt.setQuality(vash.Quality.parseQuality("preview"));
+		Assert.assertEquals(vash.Quality.PREVIEW, opt.getQuality());
+		opt.setQuality(vash.Quality.parseQuality("compact"));
+		Assert.assertEquals(vash.Quality.COMPACT, opt.getQuality());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSetQualityInvalid() {
+		opt.setQuality(vash.Quality.parseQuality("fast"));
+	}
+
 	@Test
 	public void testSetAnimationMode() {
 		//TODO: not yet implemented
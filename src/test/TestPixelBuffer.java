@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.PixelBuffer;
+import vash.PixelFormat;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestPixelBuffer {
+	private static final int W = 45;
+	private static final int H = 30;
+	private static final int OFFSET = 7;
+	
+	private Tree tree(int tileSize, boolean compiled) throws NoSuchAlgorithmException {
+		Tree tree = new Tree(TreeParameters.createInstance("1.1", "pixels".getBytes()));
+		tree.setGenerationParameters(new ImageParameters(W, H));
+		tree.setTileSize(tileSize);
+		tree.setCompiled(compiled);
+		return tree;
+	}
+
+	/*
+	 * The expected bytes of pixel (x, y), from a BGR frame.
+	 */
+	private static int[] expect(byte[] bgr, int x, int y, PixelFormat format) {
+		int k = (y * W + x) * 3;
+		int b = bgr[k] & 0xFF, g = bgr[k + 1] & 0xFF, r = bgr[k + 2] & 0xFF;
+		switch(format) {
+		case BGR: return new int[] {b, g, r};
+		case RGB: return new int[] {r, g, b};
+		case RGBA: return new int[] {r, g, b, 255};
+		case GRAY: return new int[] {(299 * r + 587 * g + 114 * b + 500) / 1000};
+		default: return new int[] {0xFF000000 | (r << 16) | (g << 8) | b};
+		}
+	}
+	
+	private void assertLayout(Tree tree, byte[] bgr, PixelFormat format) {
+		int size = format.getPixelSize();
+		int stride = W * size + 5;
+		int length = OFFSET + H * stride;
+		byte[] pix = new byte[length];
+		ByteBuffer direct = ByteBuffer.allocateDirect(length);
+		ByteBuffer heap = ByteBuffer.wrap(new byte[length + 3], 3, length).slice();
+		tree.generateCurrentFrame(pix, OFFSET, stride, format);
+		tree.generateCurrentFrame(direct, OFFSET, stride, format);
+		tree.generateCurrentFrame(heap, OFFSET, stride, format);
+		for(int y = 0; y < H; y++) {
+			for(int x = 0; x < W; x++) {
+				int[] e = expect(bgr, x, y, format);
+				for(int c = 0; c < size; c++) {
+					int k = OFFSET + y * stride + x * size + c;
+					Assert.assertEquals(format + " " + x + "," + y, e[c], pix[k] & 0xFF);
+					Assert.assertEquals(format + " " + x + "," + y, e[c], direct.get(k) & 0xFF);
+					Assert.assertEquals(format + " " + x + "," + y, e[c], heap.get(k) & 0xFF);
+				}
+			}
+		}
+		Assert.assertEquals(0, pix[OFFSET - 1]);
+		Assert.assertEquals(0, pix[OFFSET + W * size]);
+	}
+	
+	private void assertLayouts(Tree tree) {
+		byte[] bgr = tree.generateCurrentFrame();
+		for(PixelFormat format : new PixelFormat[] {PixelFormat.BGR, PixelFormat.RGB, PixelFormat.RGBA, PixelFormat.GRAY}) {
+			assertLayout(tree, bgr, format);
+		}
+		int stride = W + 3;
+		int[] argb = new int[OFFSET + H * stride];
+		tree.generateCurrentFrame(argb, OFFSET, stride);
+		for(int y = 0; y < H; y++) {
+			for(int x = 0; x < W; x++) {
+				Assert.assertEquals(expect(bgr, x, y, PixelFormat.ARGB)[0], argb[OFFSET + y * stride + x]);
+			}
+		}
+	}
+
+	@Test
+	public void testLayouts() throws NoSuchAlgorithmException {
+		assertLayouts(tree(0, false));
+	}
+
+	@Test
+	public void testLayoutsTiledAndCompiled() throws NoSuchAlgorithmException {
+		assertLayouts(tree(16, false));
+		assertLayouts(tree(16, true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStrideTooSmall() throws NoSuchAlgorithmException {
+		tree(0, false).generateCurrentFrame(new byte[W * H * 4], 0, W * 3 - 1, PixelFormat.BGR);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBufferTooSmall() throws NoSuchAlgorithmException {
+		tree(0, false).generateCurrentFrame(ByteBuffer.allocate(W * H * 3), 1, W * 3, PixelFormat.BGR);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadOnly() {
+		new PixelBuffer(ByteBuffer.allocate(W * H * 3).asReadOnlyBuffer(), 0, W * 3, PixelFormat.RGB);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testArgbBytes() {
+		new PixelBuffer(new byte[W * H * 4], 0, W * 4, PixelFormat.ARGB);
+	}
+}
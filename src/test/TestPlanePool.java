@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Plane;
+import vash.PlanePool;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestPlanePool {
+	private void render(String data, int tileSize, int parallelism) throws NoSuchAlgorithmException {
+		Tree tree = new Tree(TreeParameters.createInstance("1.1", data.getBytes()));
+		tree.setGenerationParameters(new ImageParameters(200, 150));
+		tree.setTileSize(tileSize);
+		tree.setParallelism(parallelism);
+		tree.generateCurrentFrame();
+	}
+
+	@Test
+	public void testSteadyStateDoesNotAllocate() throws NoSuchAlgorithmException {
+		PlanePool pool = PlanePool.getShared();
+		for(int i = 0; i < 2; i++) {
+			render("foo", 0, 1);
+			render("bar", 0, 1);
+			render("foo", 64, 1);
+		}
+		long allocated = pool.getAllocatedCount();
+		render("foo", 0, 1);
+		render("bar", 0, 1);
+		render("foo", 64, 1);
+		Assert.assertEquals(allocated, pool.getAllocatedCount());
+	}
+
+	@Test
+	public void testSharedBetweenImages() {
+		ImageParameters a = new ImageParameters(300, 300);
+		ImageParameters b = new ImageParameters(300, 300);
+		Plane p = a.getPlane();
+		a.putPlane(p);
+		Assert.assertSame(p, b.getPlane());
+		b.putPlane(p);
+	}
+
+	@Test
+	public void testParallelRenders() throws NoSuchAlgorithmException {
+		for(int i = 0; i < 4; i++) {
+			render("baz" + i, 32, 4);
+			render("baz" + i, 0, 4);
+		}
+	}
+
+	@Test
+	public void testResultInPlace() {
+		ImageParameters ip = new ImageParameters(37, 23);
+		Plane A = ip.getPlane();
+		Plane B = ip.getPlane();
+		Assert.assertSame(A, ip.getResultPlane(A));
+		Assert.assertSame(A, ip.getResultPlane(A, B));
+		A.share(2);
+		Plane C = ip.getResultPlane(A);
+		Assert.assertNotSame(A, C);
+		ip.putPlane(C);
+		Assert.assertSame(B, ip.getResultPlane(A, B));
+		ip.putPlane(A);
+		Assert.assertSame(A, ip.getResultPlane(A));
+		ip.putPlane(A);
+		ip.putPlane(B);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeBudget() {
+		new PlanePool(-1);
+	}
+}
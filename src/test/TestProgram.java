@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Tree;
+import vash.TreeParameters;
+import vash.operation.ColorNode;
+import vash.operation.Const;
+import vash.operation.LinearGradient;
+import vash.operation.OperationNode;
+import vash.operation.Program;
+import vash.operation.RGB_Space;
+import vash.operation.Sine;
+
+
+public class TestProgram {
+	private byte[] generate(String algo, String data, int w, int h, int tileSize, boolean compiled, boolean fused) 
+			throws NoSuchAlgorithmException
+	{
+		Tree tree = new Tree(TreeParameters.createInstance(algo, data.getBytes()));
+		tree.setGenerationParameters(new ImageParameters(w, h));
+		tree.setTileSize(tileSize);
+		tree.setCompiled(compiled);
+		tree.setFused(fused);
+		return tree.generateCurrentFrame();
+	}
+
+	private void assertCompiledIsExact(String algo, int w, int h, int tileSize) 
+			throws NoSuchAlgorithmException
+	{
+		for(int i = 0; i < 10; i++) {
+			String data = String.format("%03d", i);
+			byte[] expect = generate(algo, data, w, h, 0, false, false);
+			byte[] actual = generate(algo, data, w, h, tileSize, true, false);
+			Assert.assertArrayEquals(algo + ":" + data, expect, actual);
+			actual = generate(algo, data, w, h, tileSize, true, true);
+			Assert.assertArrayEquals(algo + ":" + data + " (fused)", expect, actual);
+		}
+	}
+
+	@Test
+	public void testCompiledSquare() throws NoSuchAlgorithmException {
+		assertCompiledIsExact("1.1", 128, 128, 0);
+		assertCompiledIsExact("1", 128, 128, 0);
+	}
+
+	@Test
+	public void testCompiledNonSquare() throws NoSuchAlgorithmException {
+		assertCompiledIsExact("1.1", 97, 61, 0);
+		assertCompiledIsExact("1", 61, 97, 0);
+		assertCompiledIsExact("1-fast", 200, 64, 0);
+	}
+
+	@Test
+	public void testCompiledTiles() throws NoSuchAlgorithmException {
+		assertCompiledIsExact("1.1", 130, 100, Tree.DEFAULT_TILE_SIZE);
+		assertCompiledIsExact("1", 100, 130, 37);
+	}
+
+	@Test
+	public void testFusedMirroredGradients() {
+		// near vertical gradients are mirrored, which must compile, rather
+		// than fall back to the interpreter
+		Program program = Program.compile(new RGB_Space(
+				new LinearGradient(0.1, -0.5, 0.15, 0.5), 
+				new LinearGradient(-0.5, 0.1, 0.5, 0.3), 
+				new Const(0.25)));
+		Assert.assertTrue(program.fuse());
+	}
+
+	@Test
+	public void testFusedLongChain() {
+		// far too long for a single java method, so it must be split
+		OperationNode chain = new Const(0.5);
+		for(int i = 0; i < 4000; i++) {
+			chain = new Sine(1.0, 0.0005 * i, chain);
+		}
+		ImageParameters ip = new ImageParameters(7, 5);
+		ColorNode tree = new RGB_Space(chain, new Const(0.1), new Const(0.2));
+		Program big = Program.compile(tree);
+		Assert.assertTrue(big.fuse());
+		byte[] actual = new byte[7 * 5 * 3];
+		big.run(ip, actual);
+		Assert.assertArrayEquals(tree.compute(ip, true), actual);
+	}
+
+	@Test
+	public void testFusedSameShape() {
+		// these share a kernel class, but not their constants
+		ImageParameters ip = new ImageParameters(9, 7);
+		for(int i = 0; i < 3; i++) {
+			ColorNode tree = new RGB_Space(
+					new Sine(1.0 + i, 0.25 * i, new LinearGradient(0.2, 0.1 * i, -0.3, 0.4)), 
+					new Const(0.1 * i), 
+					new Const(-0.2 * i));
+			Program program = Program.compile(tree);
+			Assert.assertTrue(program.fuse());
+			byte[] actual = new byte[9 * 7 * 3];
+			program.run(ip, actual);
+			Assert.assertArrayEquals(tree.compute(ip, true), actual);
+		}
+	}
+}
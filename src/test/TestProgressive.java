@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.ProgressiveListener;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestProgressive {
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	private static byte[] bytes(BufferedImage image) {
+		return ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+	}
+
+	private Tree tree(String algo, String data, int w, int h) throws NoSuchAlgorithmException {
+		Tree tree = new Tree(TreeParameters.createInstance(algo, data.getBytes()));
+		tree.setGenerationParameters(new ImageParameters(w, h));
+		return tree;
+	}
+
+	/*
+	 * Check that each pass has the exact value of every pixel that it claims
+	 * to have computed, and that the last pass is the exact image.
+	 */
+	private void assertProgressiveIsExact(final Tree tree, final int w, final int h) {
+		final byte[] expect = tree.generateCurrentFrame();
+		final ArrayList<Integer> scales = new ArrayList<Integer>();
+		BufferedImage image = tree.generateProgressively(new ProgressiveListener() {
+			@Override
+			public boolean passComplete(BufferedImage image, int scale) {
+				scales.add(scale);
+				byte[] pix = bytes(image);
+				for(int y = 0; y < h; y += scale) {
+					for(int x = 0; x < w; x += scale) {
+						// Note: rows are stored bottom to top
+						int k = ((h - 1 - y) * w + x) * 3;
+						for(int c = 0; c < 3; c++) {
+							Assert.assertEquals(scale + ": " + x + "," + y, expect[k + c], pix[k + c]);
+						}
+					}
+				}
+				return true;
+			}
+		});
+		Assert.assertEquals("[8, 4, 2, 1]", scales.toString());
+		Assert.assertArrayEquals(expect, bytes(image));
+	}
+
+	@Test
+	public void testProgressiveIsExact() throws NoSuchAlgorithmException {
+		for(int i = 0; i < 5; i++) {
+			String data = String.format("%03d", i);
+			assertProgressiveIsExact(tree("1.1", data, 67, 45), 67, 45);
+			// algorithm 1 mirrors some gradients over the full image
+			assertProgressiveIsExact(tree("1", data, 64, 64), 64, 64);
+			assertProgressiveIsExact(tree("1", data, 51, 80), 51, 80);
+		}
+	}
+
+	@Test
+	public void testProgressiveSmallImage() throws NoSuchAlgorithmException {
+		assertProgressiveIsExact(tree("1.1", "small", 3, 5), 3, 5);
+	}
+
+	@Test
+	public void testProgressiveCompiledAndParallel() throws NoSuchAlgorithmException {
+		for(String algo : new String[] {"1.1", "1"}) {
+			Tree tree = tree(algo, "compiled", 40, 30);
+			tree.setCompiled(true);
+			assertProgressiveIsExact(tree, 40, 30);
+			tree.setFused(true);
+			assertProgressiveIsExact(tree, 40, 30);
+			tree = tree(algo, "parallel", 40, 30);
+			tree.setForkJoinPool(POOL);
+			assertProgressiveIsExact(tree, 40, 30);
+		}
+	}
+
+	@Test
+	public void testStop() throws NoSuchAlgorithmException {
+		final int[] passes = {0};
+		tree("1.1", "stop", 32, 32).generateProgressively(new ProgressiveListener() {
+			@Override
+			public boolean passComplete(BufferedImage image, int scale) {
+				passes[0]++;
+				return scale > 4;
+			}
+		});
+		Assert.assertEquals(2, passes[0]);
+	}
+}
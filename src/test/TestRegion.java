@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Quality;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestRegion {
+	private Tree tree(String algo, String data, ImageParameters ip) throws NoSuchAlgorithmException {
+		Tree tree = new Tree(TreeParameters.createInstance(algo, data.getBytes()));
+		tree.setGenerationParameters(ip);
+		return tree;
+	}
+
+	/*
+	 * Check that each w by h region of the image is exactly the same as the 
+	 * pixels of the full image that it covers.
+	 */
+	private void assertRegionIsExact(String algo, int iw, int ih, int w, int h, int tileSize, boolean compiled) 
+			throws NoSuchAlgorithmException
+	{
+		for(int i = 0; i < 5; i++) {
+			String data = String.format("%03d", i);
+			byte[] full = tree(algo, data, new ImageParameters(iw, ih)).generateCurrentFrame();
+			for(int y = 0; y < ih; y += h) {
+				for(int x = 0; x < iw; x += w) {
+					int rw = Math.min(w, iw - x);
+					int rh = Math.min(h, ih - y);
+					Tree tree = tree(algo, data, new ImageParameters(iw, ih, x, y, rw, rh, Quality.CANONICAL));
+					tree.setTileSize(tileSize);
+					tree.setCompiled(compiled);
+					byte[] region = tree.generateCurrentFrame();
+					for(int j = 0; j < rh; j++) {
+						int k = ((y + j) * iw + x) * 3;
+						int r = j * rw * 3;
+						for(int c = 0; c < rw * 3; c++) {
+							Assert.assertEquals(algo + ":" + data + " " + x + "," + y, full[k + c], region[r + c]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRegionIsExact() throws NoSuchAlgorithmException {
+		assertRegionIsExact("1.1", 96, 96, 32, 32, 0, false);
+		assertRegionIsExact("1.1", 100, 70, 40, 30, 16, false);
+	}
+
+	@Test
+	public void testRegionMirroredGradients() throws NoSuchAlgorithmException {
+		// algorithm 1 mirrors some gradients over the full, virtual, image
+		assertRegionIsExact("1", 96, 96, 40, 24, 0, false);
+		assertRegionIsExact("1", 128, 64, 48, 20, 0, false);
+		assertRegionIsExact("1-fast", 64, 112, 24, 48, 16, false);
+	}
+
+	@Test
+	public void testRegionCompiled() throws NoSuchAlgorithmException {
+		assertRegionIsExact("1.1", 90, 60, 32, 32, 0, true);
+		assertRegionIsExact("1", 60, 90, 32, 32, 0, true);
+	}
+
+	@Test
+	public void testFringeFollowsVirtualImage() {
+		ImageParameters full = new ImageParameters(65536, 65536);
+		ImageParameters region = new ImageParameters(65536, 65536, 4096, 0, 256, 256, Quality.CANONICAL);
+		Assert.assertEquals(full.getFringe(), region.getFringe(), 0.0f);
+		Assert.assertEquals(full.getXValues()[4096], region.getXValues()[0], 0.0f);
+		Assert.assertEquals(full.getXValues()[4351], region.getXValues()[255], 0.0f);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRegionOutsideImage() {
+		new ImageParameters(256, 256, 200, 0, 64, 64, Quality.CANONICAL);
+	}
+}
@@ -20,9 +20,15 @@ package test;
 
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.Assert;
 
@@ -30,7 +36,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import vash.InvalidAlgorithmException;
+import vash.SaltContext;
 import vash.Seed;
+import vash.TreeParameters;
 
 public class TestSeed {
 
@@ -177,4 +186,137 @@ public class TestSeed {
 		
 		assertSameSeed(s1, s2);
 	}
+
+	/*
+	 * Check that algorithm 1.1 gives exactly the values of the original bit
+	 * at a time implementation, for a random mix of calls that takes bits 
+	 * from every position of its blocks.
+	 */
+	private void assertSameAsReference(byte[] salt, byte[] data, long mix) throws Exception {
+		final int[] bounds = {1, 2, 3, 7, 10, 16, 100, 1000, 1 << 20, 1 << 30, Integer.MAX_VALUE};
+		Seed s = getSeedOrFail("1.1", salt, data);
+		ReferenceSeedHVAC ref = new ReferenceSeedHVAC(salt, new ByteArrayInputStream(data));
+		Random r = new Random(mix);
+		for(int i = 0; i < 2000; i++) {
+			if(r.nextBoolean()) {
+				Assert.assertEquals(ref.nextDouble(), s.nextDouble(), 0.0);
+			} else {
+				int n = bounds[r.nextInt(bounds.length)];
+				Assert.assertEquals(ref.nextInt(n), s.nextInt(n));
+			}
+		}
+	}
+
+	@Test
+	public void testSeed1_1MatchesReference() throws Exception {
+		byte[] salt = new byte[512/8];
+		for(int i = 0; i < 100; i++) {
+			byte[] data = String.format("%03d", i).getBytes("ASCII");
+			assertSameAsReference(null, data, i);
+			salt[i % salt.length] ^= (byte)(i * 31 + 7);
+			assertSameAsReference(salt, data, i);
+		}
+		assertSameAsReference(null, new byte[0], 100);
+	}
+
+	@Test
+	public void testSaltContext() throws Exception {
+		byte[] salt = new byte[512/8];
+		System.arraycopy("Iqe4HOR4El".getBytes("ASCII"), 0, salt, 0, 10);
+		for(String algo : new String[] {"1-fast", "1", "1.1"}) {
+			for(byte[] saltBytes : new byte[][] {null, salt}) {
+				SaltContext ctx = new SaltContext(algo, saltBytes);
+				Assert.assertEquals(algo, ctx.getAlgorithm());
+				// each seed must start from its own copy of the context
+				for(String data : new String[] {"Vash", "Foo", "Vash"}) {
+					Seed s1 = getSeedOrFail(algo, saltBytes, data.getBytes("ASCII"));
+					Seed s2 = new Seed(ctx, new ByteArrayInputStream(data.getBytes("ASCII")));
+					Assert.assertEquals(algo, s2.getAlgorithm());
+					assertSameSeed(s1, s2);
+				}
+			}
+		}
+	}
+
+	@Test(expected=InvalidAlgorithmException.class)
+	public void testSaltContextUnknownAlgorithm() throws Exception {
+		new SaltContext("2", null);
+	}
+
+	@Test
+	public void testFileDataIsMapped() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		File file = File.createTempFile("vash", ".dat");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		for(String algo : new String[] {"1-fast", "1", "1.1"}) {
+			Seed s1 = getSeedOrFail(algo, null, data);
+			FileInputStream in = new FileInputStream(file);
+			Seed s2 = new Seed(algo, null, in);
+			Assert.assertEquals(-1, in.read());
+			in.close();
+			assertSameSeed(s1, s2);
+			
+			// only the data left in the stream is vashed
+			in = new FileInputStream(file);
+			Assert.assertEquals(1000, in.skip(1000));
+			s1 = getSeedOrFail(algo, null, Arrays.copyOfRange(data, 1000, data.length));
+			s2 = new Seed(algo, null, in);
+			in.close();
+			assertSameSeed(s1, s2);
+		}
+	}
+
+	@Test
+	public void testBuilder() throws Exception {
+		byte[] data = new byte[10000];
+		new Random(7).nextBytes(data);
+		byte[] salt = new byte[512/8];
+		salt[3] = 42;
+		for(String algo : new String[] {"1-fast", "1", "1.1"}) {
+			Seed s1 = getSeedOrFail(algo, salt, data);
+			TreeParameters.Builder b = new TreeParameters.Builder(algo, salt);
+			b.update(data, 0, 100).update(ByteBuffer.wrap(data, 100, 4900));
+			ByteBuffer direct = ByteBuffer.allocateDirect(5000);
+			direct.put(data, 5000, 5000).flip();
+			b.update(direct);
+			Assert.assertFalse(direct.hasRemaining());
+			assertSameSeed(s1, b.finish().getSeed());
+			
+			s1 = getSeedOrFail(algo, salt, data);
+			b = new TreeParameters.Builder(new SaltContext(algo, salt));
+			assertSameSeed(s1, b.update(data).finish().getSeed());
+			try {
+				b.update(data);
+				Assert.fail();
+			} catch(IllegalStateException e) {}
+		}
+	}
+
+	@Test
+	public void testFromHash() throws Exception {
+		byte[] data = "Vash".getBytes("ASCII");
+		byte[] salt = new byte[512/8];
+		salt[0] = 1;
+		for(String algo : new String[] {"1-fast", "1", "1.1"}) {
+			for(byte[] saltBytes : new byte[][] {null, salt}) {
+				byte[] hash = Seed.computeHash(algo, saltBytes, new ByteArrayInputStream(data));
+				Assert.assertEquals(Seed.getHashSizeForAlgorithm(algo), hash.length);
+				assertSameSeed(getSeedOrFail(algo, saltBytes, data), Seed.fromHash(algo, hash));
+				
+				TreeParameters.Builder b = new TreeParameters.Builder(algo, saltBytes);
+				Assert.assertTrue(Arrays.equals(hash, b.update(data).finishHash()));
+				assertSameSeed(getSeedOrFail(algo, saltBytes, data), 
+						TreeParameters.createInstanceFromHash(algo, hash).getSeed());
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testFromHashWrongSize() throws Exception {
+		Seed.fromHash("1.1", new byte[64]);
+	}
 }
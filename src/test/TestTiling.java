@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Tree;
+import vash.TreeParameters;
+
+
+public class TestTiling {
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	private byte[] generate(String algo, String data, int w, int h, int tileSize, ForkJoinPool pool) 
+			throws NoSuchAlgorithmException
+	{
+		Tree tree = new Tree(TreeParameters.createInstance(algo, data.getBytes()));
+		tree.setGenerationParameters(new ImageParameters(w, h));
+		tree.setTileSize(tileSize);
+		tree.setForkJoinPool(pool);
+		return tree.generateCurrentFrame();
+	}
+
+	private void assertTilingIsExact(String algo, int w, int h, int tileSize) 
+			throws NoSuchAlgorithmException
+	{
+		for(int i = 0; i < 10; i++) {
+			String data = String.format("%03d", i);
+			byte[] expect = generate(algo, data, w, h, 0, null);
+			byte[] actual = generate(algo, data, w, h, tileSize, null);
+			Assert.assertArrayEquals(algo + ":" + data, expect, actual);
+			actual = generate(algo, data, w, h, tileSize, POOL);
+			Assert.assertArrayEquals(algo + ":" + data + " (parallel)", expect, actual);
+		}
+	}
+
+	@Test
+	public void testTiledSquare() throws NoSuchAlgorithmException {
+		assertTilingIsExact("1.1", 128, 128, Tree.DEFAULT_TILE_SIZE);
+		assertTilingIsExact("1", 128, 128, Tree.DEFAULT_TILE_SIZE);
+	}
+
+	@Test
+	public void testTiledPartialTiles() throws NoSuchAlgorithmException {
+		assertTilingIsExact("1.1", 100, 70, 32);
+		assertTilingIsExact("1-fast", 100, 70, 7);
+	}
+
+	@Test
+	public void testTiledNonSquareMirroredGradients() throws NoSuchAlgorithmException {
+		// algorithm 1 uses the old linear gradient, which mirrors the full image
+		assertTilingIsExact("1", 256, 128, 48);
+		assertTilingIsExact("1-fast", 96, 160, 32);
+	}
+
+	@Test
+	public void testParallelSubtrees() throws NoSuchAlgorithmException {
+		// without tiles, the pool computes independent subtrees in parallel
+		assertTilingIsExact("1.1", 300, 200, 0);
+		assertTilingIsExact("1", 512, 256, 0);
+	}
+
+	// the names of the pools that live threads belong to
+	private static Set<String> livePools() {
+		Set<String> pools = new HashSet<String>();
+		for(Thread t : Thread.getAllStackTraces().keySet()) {
+			String name = t.getName();
+			if(name.startsWith("ForkJoinPool-"))
+				pools.add(name.substring(0, name.indexOf("-worker")));
+		}
+		return pools;
+	}
+
+	@Test
+	public void testParallelismSharesPools() throws NoSuchAlgorithmException {
+		// trees that ask for the same parallelism share one pool, so rendering
+		// many of them never starts more than one new pool
+		Set<String> before = livePools();
+		for(int i = 0; i < 10; i++) {
+			Tree tree = new Tree(TreeParameters.createInstance("1.1", String.format("%03d", i).getBytes()));
+			tree.setGenerationParameters(new ImageParameters(128, 128));
+			tree.setTileSize(32);
+			tree.setParallelism(3);
+			tree.generateCurrentFrame();
+		}
+		Set<String> after = livePools();
+		after.removeAll(before);
+		Assert.assertTrue(after.toString(), after.size() <= 1);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.operation;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.ImageParameters;
+import vash.Tree;
+import vash.TreeParameters;
+import vash.operation.Absolute;
+import vash.operation.Add;
+import vash.operation.ColorNode;
+import vash.operation.Const;
+import vash.operation.Invert;
+import vash.operation.Multiply;
+import vash.operation.Optimizer;
+import vash.operation.Program;
+import vash.operation.RGB_Space;
+import vash.operation.RadialGradient;
+import vash.operation.Sine;
+import vash.operation.Spiral;
+
+
+public class TestOptimizer {
+	private void assertOptimizedIsExact(ColorNode tree, int nodesSaved) {
+		ImageParameters ip = new ImageParameters(97, 61);
+		Optimizer opt = new Optimizer(tree);
+		Assert.assertEquals(nodesSaved, opt.getNodesSaved());
+		Assert.assertArrayEquals(tree.compute(ip, true), opt.getTree().compute(ip, true));
+	}
+	
+	private RadialGradient radial(double angle) {
+		return new RadialGradient(0.1, -0.2, 0.7, 0.4, angle);
+	}
+	
+	private RadialGradient radial() {
+		return radial(0.3);
+	}
+	
+	private ColorNode shared() {
+		return new RGB_Space(
+				new Multiply(radial(), new Sine(1.5, 0.25, radial())),
+				new Sine(1.5, 0.25, radial()),
+				new Add(new Invert(radial()), new Sine(1.5, 0.25, radial())));
+	}
+
+	@Test
+	public void testRemoveRedundant() {
+		assertOptimizedIsExact(new RGB_Space(
+				new Invert(new Invert(radial(0.1))),
+				new Absolute(new Absolute(radial(0.2))),
+				new Absolute(new Invert(radial(0.3)))), 4);
+	}
+
+	@Test
+	public void testShareSubtrees() {
+		assertOptimizedIsExact(shared(), 6);
+		assertOptimizedIsExact(new RGB_Space(new Add(radial(), radial()), radial(), new Const(0.5)), 3);
+	}
+	
+	@Test
+	public void testSharedInParallel() {
+		final ImageParameters ip = new ImageParameters(300, 200);
+		final ColorNode tree = new Optimizer(shared()).getTree();
+		byte[] expect = shared().compute(ip, true);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for(int i = 0; i < 20; i++) {
+			byte[] actual = pool.invoke(new RecursiveTask<byte[]>() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected byte[] compute() {
+					return tree.compute(ip, true);
+				}
+			});
+			Assert.assertArrayEquals(expect, actual);
+		}
+		pool.shutdown();
+	}
+	
+	private ColorNode nested() {
+		return new RGB_Space(
+				new Multiply(new Sine(1.5, 0.25, radial()), radial()),
+				new Multiply(new Sine(1.5, 0.25, radial()), radial()),
+				new Multiply(new Sine(1.5, 0.25, radial()), radial()));
+	}
+	
+	@Test
+	public void testNestedSharedInParallel() throws Exception {
+		final ImageParameters ip = new ImageParameters(1024, 1024);
+		final ColorNode tree = new Optimizer(nested()).getTree();
+		byte[] expect = nested().compute(ip, true);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for(int i = 0; i < 5; i++) {
+			// several renders of the same parameters at once
+			ArrayList<ForkJoinTask<byte[]>> renders = new ArrayList<ForkJoinTask<byte[]>>();
+			for(int j = 0; j < 3; j++) {
+				renders.add(pool.submit(new RecursiveTask<byte[]>() {
+					private static final long serialVersionUID = 1L;
+					@Override
+					protected byte[] compute() {
+						return tree.compute(ip, true);
+					}
+				}));
+			}
+			for(ForkJoinTask<byte[]> render : renders) {
+				Assert.assertArrayEquals(expect, render.get());
+			}
+		}
+		pool.shutdown();
+	}
+	
+	@Test
+	public void testAbandonedRender() {
+		// a render that stops before every parent of a shared subtree has 
+		// taken its plane leaves nothing behind for the next render
+		ImageParameters ip = new ImageParameters(97, 61);
+		ColorNode tree = new Optimizer(shared()).getTree();
+		byte[] expect = shared().compute(ip, true);
+		for(int i = 0; i < 3; i++) {
+			ip.putPlane(tree.getChild(1).compute(ip));
+			Assert.assertArrayEquals(expect, tree.compute(ip, true));
+		}
+	}
+	
+	@Test
+	public void testSharedCompiled() {
+		ImageParameters ip = new ImageParameters(97, 61);
+		byte[] expect = shared().compute(ip, true);
+		Program program = Program.compile(new Optimizer(shared()).getTree());
+		byte[] actual = new byte[97 * 61 * 3];
+		program.run(ip, actual);
+		Assert.assertArrayEquals(expect, actual);
+	}
+	
+	@Test
+	public void testStructuralHash() {
+		ColorNode a = shared();
+		ColorNode b = shared();
+		Assert.assertTrue(a.structurallyEquals(b));
+		Assert.assertEquals(a.structuralHash(), b.structuralHash());
+		Assert.assertFalse(a.getChild(1).structurallyEquals(new Sine(1.5, 0.5, radial())));
+		Assert.assertFalse(a.getChild(1).structurallyEquals(b.getChild(0)));
+	}
+
+	@Test
+	public void testOriginalIsUnchanged() {
+		ColorNode tree = new RGB_Space(new Invert(new Invert(radial())), new Const(0.2), radial());
+		int count = tree.getNodeCount();
+		new Optimizer(tree);
+		Assert.assertEquals(count, tree.getNodeCount());
+	}
+
+	@Test
+	public void testSeededTrees() throws Exception {
+		for(String algo : new String[] {"1", "1.1"}) {
+			for(int i = 0; i < 10; i++) {
+				Tree tree = new Tree(TreeParameters.createInstance(algo, String.format("%03d", i).getBytes()));
+				tree.setGenerationParameters(new ImageParameters(97, 61));
+				byte[] expect = tree.generateCurrentFrame();
+				tree.setOptimized(true);
+				Assert.assertArrayEquals(algo + ":" + i, expect, tree.generateCurrentFrame());
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.operation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import vash.operation.Add;
+import vash.operation.ColorNode;
+import vash.operation.Multiply;
+import vash.operation.OperationNode;
+import vash.operation.RGB_Space;
+import vash.operation.RadialGradient;
+
+
+public class TestPlaneNeed {
+	private RadialGradient radial(double angle) {
+		return new RadialGradient(0.1, -0.2, 0.7, 0.4, angle);
+	}
+	
+	/*
+	 * A chain of binary nodes that gets deeper through the second child.
+	 */
+	private OperationNode rightHeavy(int depth) {
+		if(depth == 0)
+			return radial(0.1);
+		return new Add(radial(depth * 0.1), new Multiply(radial(depth * 0.2), rightHeavy(depth - 1)));
+	}
+
+	@Test
+	public void testLeaf() {
+		Assert.assertEquals(1, radial(0.3).getPlaneNeed());
+		Assert.assertEquals(3, new Add(radial(0.3), radial(0.4)).getPlaneNeed());
+	}
+
+	@Test
+	public void testHeavierChildFirst() {
+		// computing the first child first would need one more plane per level
+		Assert.assertEquals(3, rightHeavy(8).getPlaneNeed());
+		ColorNode tree = new RGB_Space(radial(0.3), rightHeavy(2), rightHeavy(4));
+		Assert.assertEquals(4, tree.getPlaneNeed());
+	}
+}
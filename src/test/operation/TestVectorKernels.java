@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.operation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+
+/*
+ * The SIMD kernels are used whenever the vector module is present, so they
+ * must agree with the scalar kernels bit for bit.  This only runs where the 
+ * vector kernels can be loaded: use "make vector-test".
+ */
+public class TestVectorKernels {
+	private Object create(String name) throws Exception {
+		Constructor<?> ctor = Class.forName(name).getDeclaredConstructor();
+		ctor.setAccessible(true);
+		return ctor.newInstance();
+	}
+
+	@Test
+	public void testVectorMatchesScalar() throws Exception {
+		Assume.assumeTrue("jdk.incubator.vector is not present", 
+				ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+		Object vector;
+		try {
+			vector = create("vash.operation.VectorKernels");
+		} catch(ClassNotFoundException e) {
+			Assume.assumeTrue("VectorKernels is not built", false);
+			return;
+		}
+		Class<?> kernels = Class.forName("vash.operation.Kernels");
+		Method mismatch = kernels.getDeclaredMethod("mismatch", kernels, kernels);
+		mismatch.setAccessible(true);
+		Assert.assertNull("kernel differs:", mismatch.invoke(null, create("vash.operation.Kernels"), vector));
+	}
+}
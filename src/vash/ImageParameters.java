@@ -18,42 +18,194 @@
  */
 package vash;
 
-import java.util.LinkedList;
-
 
 /**
  * Encapsulate all of the image generation data that is needed by a
  * node to compute values for itself.
+ * 
+ * An ImageParameters may also describe a rectangular window (a tile) of a 
+ * larger image.  In this case, getW, getH, getXValues and getYValues describe
+ * only the window, so that nodes can compute just the part of the image that 
+ * is needed; the getImage* methods still describe the full image.
+ * 
+ * The full image may itself be a region of a larger, virtual, image, which is
+ * never computed as a whole: e.g. a 256 pixel wide tile server tile of a 
+ * 65536 pixel wide image.  Every pixel of the region is computed exactly as
+ * it would be in the virtual image.
+ * 
+ * Planes are taken from, and given back to, the shared PlanePool, so they
+ * are re-used between images, tiles, and threads.
  */
 public class ImageParameters {
+	// packed planes map [-1,1] onto [-32767,32767], so that 0 and the bounds
+	// stay exact
+	private static final float PACK_SCALE = 32767.0f;
+	
 	final private int w;
 	final private int h;
 	final private float[] X;
 	final private float[] Y;
-	private final LinkedList<Plane> cache;
-	private long _puts = 0;
-	private long _gets = 0;
-	private final static long MAX_CACHE_SIZE = 64 * 1024 * 1024;
-	private final static boolean DEBUG = false;
+	final private Quality quality;
+	private final PlanePool pool = PlanePool.getShared();
+
+	// the full image that we are a window into; refers to ourself if we are not a tile
+	private final ImageParameters image;
+	private final int offsetX;
+	private final int offsetY;
+	private final int step;
+	
+	// the values of the full image that depend on the virtual image; shared 
+	// by every tile of it
+	private final float[] mirroredX;
+	private final float[] mirroredY;
+	private final float fringe;
 	
 	/**
 	 * Initialize a new set of image parameters for the given width and height.
 	 */
 	public ImageParameters(int w, int h) {
+		this(w, h, Quality.CANONICAL);
+	}
+	
+	/**
+	 * Initialize a new set of image parameters for the given width and height,
+	 * to be computed at the given quality.
+	 */
+	public ImageParameters(int w, int h, Quality quality) {
+		this(w, h, 0, 0, w, h, quality);
+	}
+	
+	/**
+	 * Initialize a new set of image parameters for the w by h region, whose 
+	 * top left pixel is at x, y, of a virtual image of the given width and 
+	 * height, to be computed at the given quality.  The region is computed 
+	 * as a w by h image, which holds exactly the pixels that the virtual 
+	 * image would hold there.  Like the rows of the output, y is counted from
+	 * the top of the image.
+	 */
+	public ImageParameters(int imageW, int imageH, int x, int y, int w, int h, Quality quality) {
+		if(quality == null)
+			throw new IllegalArgumentException("Quality must not be null");
+		if(x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > imageW || y + h > imageH)
+			throw new IllegalArgumentException("Region is outside of the image");
+		this.w = w;
+		this.h = h;
+		this.quality = quality;
+		// planes hold their rows bottom first, the reverse of the output
+		int row = imageH - y - h;
+		this.X = _xValues(imageW, x, w);
+		this.Y = _yValues(imageH, row, h);
+		this.image = this;
+		this.offsetX = 0;
+		this.offsetY = 0;
+		this.step = 1;
+		
+		// the mirror image of a row about y=x is a column, and vice versa;
+		// see LinearGradient.compute
+		if(imageW == imageH) {
+			this.mirroredX = _xValues(imageW, row, h);
+			this.mirroredY = _yValues(imageH, x, w);
+		} else {
+			this.mirroredX = _reverse(_yValues(imageH, y, h));
+			this.mirroredY = _reverse(_xValues(imageW, imageW - x - w, w));
+		}
+		
+		// the width of two pixels of the virtual image
+		float[] first = _xValues(imageW, 0, 3);
+		this.fringe = first[2] - first[0];
+	}
+	
+	/*
+	 * Returns the X values of the n columns, starting at from, of an image 
+	 * that is the given number of pixels wide.  The values are accumulated 
+	 * from the left edge, as they always have been, so that a region sees 
+	 * exactly the same values as the full image.
+	 */
+	private static float[] _xValues(int width, int from, int n) {
+		float[] X = new float[n];
+		float delta_x = 2.0f / width;
+		float gX = -1.0f + (delta_x / 2.0f);
+		for(int i = 0; i < from + n; i++, gX += delta_x) {
+			if(i >= from)
+				X[i - from] = gX;
+		}
+		return X;
+	}
+	
+	/*
+	 * Returns the Y values of the n rows, starting at from, of an image that
+	 * is the given number of pixels high, accumulated from the top edge.
+	 */
+	private static float[] _yValues(int height, int from, int n) {
+		float[] Y = new float[n];
+		float delta_y = 2.0f / height;
+		float gY = 1.0f - (delta_y / 2.0f);
+		for(int j = 0; j < from + n; j++, gY -= delta_y) {
+			if(j >= from)
+				Y[j - from] = gY;
+		}
+		return Y;
+	}
+	
+	private static float[] _reverse(float[] values) {
+		float[] out = new float[values.length];
+		for(int i = 0; i < values.length; i++)
+			out[i] = values[values.length - 1 - i];
+		return out;
+	}
+	
+	/*
+	 * Initialize a window of the given image, which takes every step'th 
+	 * pixel in each direction.  The coordinates are picked from the image, 
+	 * rather than recomputed, so that every pixel sees exactly the same 
+	 * values it would see in an un-tiled computation.
+	 */
+	private ImageParameters(ImageParameters image, int x, int y, int w, int h, int step) {
 		this.w = w;
 		this.h = h;
-		this.cache = new LinkedList<Plane>();
 		this.X = new float[w];
 		this.Y = new float[h];
-		
-		int i, j;
-		float gX, gY;
-		float delta_x = 2.0f / w;
-		float delta_y = 2.0f / h;
-		for(j = 0, gY = 1.0f - (delta_y / 2.0f); j < h; j++, gY -= delta_y)
-			Y[j] = gY;
-		for(i = 0, gX = -1.0f + (delta_x / 2.0f); i < w; i++, gX += delta_x)
-			X[i] = gX;
+		for(int i = 0; i < w; i++)
+			this.X[i] = image.X[x + i * step];
+		for(int j = 0; j < h; j++)
+			this.Y[j] = image.Y[y + j * step];
+		this.quality = image.quality;
+		this.image = image;
+		this.offsetX = x;
+		this.offsetY = y;
+		this.step = step;
+		this.mirroredX = image.mirroredX;
+		this.mirroredY = image.mirroredY;
+		this.fringe = image.fringe;
+	}
+
+	/**
+	 * Returns image parameters for the w by h window of this image whose top 
+	 * left pixel is at x, y.  Different threads may compute tiles of the same
+	 * image concurrently.
+	 */
+	public ImageParameters getTile(int x, int y, int w, int h) {
+		if(this.image != this)
+			throw new IllegalArgumentException("Cannot take a tile of a tile");
+		if(x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > this.w || y + h > this.h)
+			throw new IllegalArgumentException("Tile is outside of the image");
+		return new ImageParameters(this, x, y, w, h, 1);
+	}
+	
+	/**
+	 * Returns image parameters for the pixels of this image at (x + i * step,
+	 * y + j * step), for every i and j that lie within the image.  Each pixel
+	 * is computed exactly as it is in the full image, so these can be used to
+	 * compute a sparse preview of the image and fill it in later.
+	 */
+	public ImageParameters getSamples(int x, int y, int step) {
+		if(this.image != this)
+			throw new IllegalArgumentException("Cannot take samples of a tile");
+		if(step <= 0)
+			throw new IllegalArgumentException("Step must be positive");
+		if(x < 0 || y < 0 || x >= this.w || y >= this.h)
+			throw new IllegalArgumentException("Samples are outside of the image");
+		return new ImageParameters(this, x, y, (this.w - x + step - 1) / step, (this.h - y + step - 1) / step, step);
 	}
 
 	public int getW() {
@@ -85,52 +237,197 @@ public class ImageParameters {
 	public float[] getYValues() {
 		return Y;
 	}
+
+	
+	/**
+	 * Returns the width of the full image.  This is the same as getW, unless
+	 * these parameters are a tile.
+	 */
+	public int getImageW() {
+		return image.w;
+	}
+	
+	/**
+	 * Returns the height of the full image.  This is the same as getH, unless
+	 * these parameters are a tile.
+	 */
+	public int getImageH() {
+		return image.h;
+	}
+	
+	/**
+	 * Returns the X values for every column of the full image.
+	 */
+	public float[] getImageXValues() {
+		return image.X;
+	}
+
+	/**
+	 * Returns the Y values for every row of the full image.
+	 */
+	public float[] getImageYValues() {
+		return image.Y;
+	}
+	
+	/**
+	 * Returns, for every row of the full image, the X value of that row in 
+	 * the image mirrored about y=x.  In a square image, this is the X value 
+	 * of the column with the same index; otherwise the image is mirrored 
+	 * about its other diagonal, as LinearGradient expects.
+	 */
+	public float[] getMirroredXValues() {
+		return image.mirroredX;
+	}
+	
+	/**
+	 * Returns, for every column of the full image, the Y value of that column
+	 * in the image mirrored about y=x.
+	 */
+	public float[] getMirroredYValues() {
+		return image.mirroredY;
+	}
+	
+	/**
+	 * Returns the width, in logical units, over which shapes are anti-aliased:
+	 * two pixels of the virtual image, so that a region is anti-aliased like
+	 * the image that it is part of.
+	 */
+	public float getFringe() {
+		return fringe;
+	}
+	
+	/**
+	 * Returns the quality at which the image should be computed.
+	 */
+	public Quality getQuality() {
+		return quality;
+	}
+	
+	/**
+	 * Returns the column of the full image at which our first column lies.
+	 */
+	public int getOffsetX() {
+		return offsetX;
+	}
+
+	/**
+	 * Returns the row of the full image at which our first row lies.
+	 */
+	public int getOffsetY() {
+		return offsetY;
+	}
+	
+	/**
+	 * Returns the distance, in pixels of the full image, between our 
+	 * neighboring pixels: 1, unless these parameters are samples.  Pixel 
+	 * (x, y) lies at (getOffsetX() + x * getStep(), getOffsetY() + y * getStep())
+	 * in the full image.
+	 */
+	public int getStep() {
+		return step;
+	}
 	
 	
 	/**
 	 * Returns a new, or cached, plane of values.  The plane values will not be
-	 * initialized to any specific value.
+	 * initialized to any specific value.  This may be called from several
+	 * threads at once, e.g. when subtrees are computed in parallel.
 	 */
 	public Plane getPlane() {
-		_gets += 1;
-		if(DEBUG) {
-			long tmp = ((_gets - _puts) + cache.size()) * (w * h * 4);
-			System.out.format("GetPlane: %d gets, %d puts, %d out, %d cached: %d%n", 
-					_gets, _puts, _gets - _puts, cache.size(), tmp);
-		}
-		if(cache.size() > 0) {
-			return cache.removeFirst();
-		}
-		return new Plane(this.w, this.h);
+		return this.pool.get(this.w, this.h);
 	}
 
 	/**
 	 * Give back a plane taken with getPlane.  This allows us to re-use planes,
-	 * rather than re-allocating new, massive arrays constantly.
+	 * rather than re-allocating new, massive arrays constantly.  A plane that
+	 * was shared with Plane.share is only re-used once every consumer has
+	 * given it back.
 	 */
 	public void putPlane(Plane p) {
-		_puts += 1;
-		long outstanding = ((_gets - _puts) + cache.size()) * (w * h * 4);
-		if(outstanding < MAX_CACHE_SIZE) {
-			cache.addFirst(p);
+		if(!p.release())
+			return;
+		this.pool.put(p);
+	}
+	
+	/**
+	 * Store the values of a plane that is held while other nodes are computed
+	 * in 16 bits each, as fixed point over [-1,1], and give the plane back.  
+	 * Returns null, and keeps the plane, if it is shared, since packing it 
+	 * would change it under another node.
+	 * The packed array is pooled like a plane, and goes back to the pool when
+	 * it is given to unpackPlane.
+	 */
+	public short[] packPlane(Plane p) {
+		if(!p.isExclusive())
+			return null;
+		int n = this.w * this.h;
+		short[] packed = this.pool.getPacked(n);
+		float[] data = p.data;
+		for(int k = 0; k < n; k++) {
+			float v = Math.min(1.0f, Math.max(-1.0f, data[k]));
+			packed[k] = (short)Math.round(v * PACK_SCALE);
 		}
+		this.putPlane(p);
+		return packed;
 	}
 	
 	/**
-	 * Returns a new plane of values who's coordinates are mirrored around 
-	 * y=x.  This is useful in some nodes that use slope, in order to avoid 
-	 * singularities around vertical lines.
-	 * @return a one-off plane; must be returned with putYXPlane
+	 * Returns a new, or cached, plane holding the values packed by packPlane,
+	 * and gives the packed array back to the pool; it must not be used again.
 	 */
-	public Plane getYXPlane() {
-		return new Plane(this.h, this.w);
+	public Plane unpackPlane(short[] packed) {
+		Plane p = this.getPlane();
+		float[] data = p.data;
+		for(int k = 0; k < packed.length; k++) {
+			data[k] = packed[k] / PACK_SCALE;
+		}
+		this.pool.putPacked(packed);
+		return p;
 	}
-
+	
+	/**
+	 * Returns a plane to hold the result of a node that computes each pixel 
+	 * only from the same pixel of its input plane A.  If A is not shared with
+	 * any other node, it is returned, so that the node writes its result over
+	 * its input in place; otherwise the result is a new, or cached, plane.  The node must give back its input
+	 * with putInputPlanes.
+	 */
+	public Plane getResultPlane(Plane A) {
+		if(A.isExclusive())
+			return A;
+		return getPlane();
+	}
+	
+	/**
+	 * Returns a plane to hold the result of a node that computes each pixel 
+	 * only from the same pixel of its input planes A and B, as above.  The 
+	 * result is written over whichever input is not shared, if either.
+	 */
+	public Plane getResultPlane(Plane A, Plane B) {
+		if(A.isExclusive())
+			return A;
+		if(B.isExclusive())
+			return B;
+		return getPlane();
+	}
+	
+	/**
+	 * Give back the input plane of a node, unless it holds the node's result.
+	 */
+	public void putInputPlanes(Plane out, Plane A) {
+		if(A != out)
+			putPlane(A);
+	}
+	
 	/**
-	 * Give back a plane taken with getYXPlane.
-	 * @param p the plane allocated with getYXPlane
+	 * Give back the input planes of a node, except for the one that holds 
+	 * the node's result, if any.
 	 */
-	public void putYXPlane(Plane p) {
+	public void putInputPlanes(Plane out, Plane A, Plane B) {
+		if(A != out)
+			putPlane(A);
+		if(B != out)
+			putPlane(B);
 	}
 }
 
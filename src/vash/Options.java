@@ -61,7 +61,19 @@ public class Options {
 			"  -o,--output [String]  The filename to write to (use - to write to stdout)\n" +
 			"                        (default: \"output.png\")\n" +
 			"  -F,--format [String]  One of 'bmp', 'jpeg', or 'png'.  If not set this will\n" + 
-			"                        be guessed from the extension of the output option.\n";
+			"                        be guessed from the extension of the output option.\n" +
+			"  -q,--quality\n" +
+			"              [String]  One of 'canonical', 'preview' or 'compact'.  Preview\n" +
+			"                        images are faster to compute, and compact images\n" +
+			"                        hold some planes in 16 bits, but both may differ\n" +
+			"                        slightly from the canonical image; never store them\n" +
+			"                        in place of it.\n" +
+			"                        (default: canonical)\n" +
+			"\n" +
+			"Performance Options:\n" +
+			"  -j,--threads\n" +
+			"              [Integer] The number of threads to use to compute the image\n" +
+			"                        (default: 1)\n";
 	
 	public static final String[] KNOWN_ALGORITHMS = {
 		"1.1", "1", "1-fast"
@@ -80,6 +92,10 @@ public class Options {
 	private String outputFormat = null;
 	private int width = 128;
 	private int height = 128;
+	private Quality quality = Quality.CANONICAL;
+
+	// performance arguments
+	private int threads = 1;
 
 	// animation parameters
 	private AnimationMode animationMode = AnimationMode.WRAP;
@@ -102,6 +118,7 @@ public class Options {
 			this.data = System.in;
 		} else {
 			try {
+				// not buffered, so that Seed can map the file, rather than read it
 				this.data = new FileInputStream(filename);
 			} catch(FileNotFoundException e) {
 				System.err.println(e.getLocalizedMessage());
@@ -214,6 +231,23 @@ public class Options {
 		this.height = height;
 	}
 	
+	public Quality getQuality() {
+		return quality;
+	}
+	public void setQuality(Quality quality) {
+		this.quality = quality;
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	public void setThreads(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("The thread count must be at least 1.");
+		}
+		this.threads = threads;
+	}
+	
 	public AnimationMode getAnimationMode() {
 		return animationMode;
 	}
@@ -305,6 +339,8 @@ public class Options {
 				"--format", "-F",
 				"--width", "-w", 
 				"--height", "-h",
+				"--quality", "-q",
+				"--threads", "-j",
 				"--animate-mode", "-A",
 				"--duration", "-D",
 				"--period", "-P",
@@ -367,6 +403,10 @@ public class Options {
 				setWidth(Integer.decode(opt));
 			} else if(arg.equals("--height") || arg.equals("-h")) {
 				setHeight(Integer.decode(opt));
+			} else if(arg.equals("--quality") || arg.equals("-q")) {
+				setQuality(Quality.parseQuality(opt));
+			} else if(arg.equals("--threads") || arg.equals("-j")) {
+				setThreads(Integer.decode(opt));
 			} else if(arg.equals("--animate-mode") || arg.equals("-A")) {
 				setAnimationMode(AnimationMode.parseAnimationMode(opt));
 			} else if(arg.equals("--duration") || arg.equals("-D")) {
@@ -18,17 +18,25 @@
  */
 package vash;
 
-import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
-import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
-import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
 
 /*
 import com.xuggle.mediatool.IMediaWriter;
@@ -52,7 +60,7 @@ public class Output {
 		this.params = params;
 		this.tree = tree;
 
-		ImageParameters ip = new ImageParameters(params.getWidth(), params.getHeight());
+		ImageParameters ip = new ImageParameters(params.getWidth(), params.getHeight(), params.getQuality());
 		tree.setGenerationParameters(ip);
 	}
 	
@@ -64,7 +72,7 @@ public class Output {
 		// do computation of a frame
 		//if(!this.params.isVideo()) {
 		BufferedImage bimg = this.generateImage();
-		Output.writeImageFile(this.params.getFilename(), this.params.getImageType(), bimg);
+		Output.writeImageFile(this.params.getFilename(), this.params.getImageType(), bimg, this.params.getQuality());
 		//} else {
 		//	this.writeVideo();
 		//}
@@ -110,9 +118,7 @@ public class Output {
 	 * Build and return the current frame as an image.
 	 */
 	public BufferedImage generateImage() {
-		byte[] pix = tree.generateCurrentFrame();
-		BufferedImage bimage = dataToImage(pix, params.getWidth(), params.getHeight());
-		return bimage;
+		return tree.generateCurrentImage();
 	}
 	
 	
@@ -132,18 +138,63 @@ public class Output {
 	}
 	
 	
+	/**
+	 * Write the given image, computed at the given quality, to the given file. 
+	 * Preview and compact images written as png are marked as such with a 
+	 * comment, so that they can be told apart from canonical images.
+	 */
+	public static void writeImageFile(String filename, String filetype, BufferedImage bimage, Quality quality) 
+			throws IOException 
+	{
+		if(quality == Quality.CANONICAL || !filetype.equals("png")) {
+			writeImageFile(filename, filetype, bimage);
+			return;
+		}
+		
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(filetype).next();
+		IIOMetadata meta = writer.getDefaultImageMetadata(
+				ImageTypeSpecifier.createFromRenderedImage(bimage), writer.getDefaultWriteParam());
+		IIOMetadataNode entry = new IIOMetadataNode("tEXtEntry");
+		entry.setAttribute("keyword", "Comment");
+		entry.setAttribute("value", "Vash " + quality.name().toLowerCase() + " image: not canonical output");
+		IIOMetadataNode text = new IIOMetadataNode("tEXt");
+		text.appendChild(entry);
+		IIOMetadataNode root = new IIOMetadataNode("javax_imageio_png_1.0");
+		root.appendChild(text);
+		meta.mergeTree("javax_imageio_png_1.0", root);
+		
+		ImageOutputStream stream;
+		if(filename.equals("-")) {
+			stream = ImageIO.createImageOutputStream(System.out);
+		} else {
+			File fp = new File(filename);
+			fp = new File(fp.getCanonicalPath());
+			// Note: the stream does not truncate an existing file
+			fp.delete();
+			stream = ImageIO.createImageOutputStream(fp);
+		}
+		try {
+			writer.setOutput(stream);
+			writer.write(new IIOImage(bimage, null, meta));
+		} finally {
+			stream.close();
+			writer.dispose();
+		}
+	}
+	
+	
 	/**
 	 * Convert an array of raw pixel values, as produced by a Tree, into a 
-	 * BufferedImage suitable for use with the rest of Java.
+	 * BufferedImage suitable for use with the rest of Java.  The image is a
+	 * TYPE_3BYTE_BGR image backed by pix itself, rather than by a copy.
 	 */
 	public static BufferedImage dataToImage(byte[] pix, int w, int h) {
 		DataBuffer data = new DataBufferByte(pix, pix.length);
 		int[] bandOffset = {2, 1, 0};
-		SampleModel fmt = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, w, h, 3, w * 3, bandOffset);
-		Raster raster = Raster.createRaster(fmt, data, new Point(0, 0));
-		BufferedImage bimage = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
-		bimage.setData(raster);
-		return bimage;
+		WritableRaster raster = Raster.createInterleavedRaster(data, w, h, w * 3, 3, bandOffset, null);
+		ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 
+				false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		return new BufferedImage(cm, raster, false, null);
 	}
 }
 
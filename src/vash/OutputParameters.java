@@ -49,6 +49,11 @@ public class OutputParameters {
 	 */
 	private final int width;
 	private final int height;
+	
+	/**
+	 * The quality at which to compute the image(s).
+	 */
+	private final Quality quality;
 
 
 	/**
@@ -56,7 +61,7 @@ public class OutputParameters {
 	 * @param opts
 	 */
 	public OutputParameters(Options opts) {
-		this(opts.getOutput(), opts.getOutputFormat(), opts.getWidth(), opts.getHeight());
+		this(opts.getOutput(), opts.getOutputFormat(), opts.getWidth(), opts.getHeight(), opts.getQuality());
 	}
 	
 
@@ -79,6 +84,19 @@ public class OutputParameters {
 	 * @param height The height of the image to write.
 	 */
 	public OutputParameters(String filename, String format, int width, int height) {
+		this(filename, format, width, height, Quality.CANONICAL);
+	}
+
+	
+	/**
+	 * Initialize parameters from given values.
+	 * @param filename The name of the target file to write to.
+	 * @param format The image output format (bmp, png, or jpeg).
+	 * @param width The width of the image to write.
+	 * @param height The height of the image to write.
+	 * @param quality The quality at which to compute the image.
+	 */
+	public OutputParameters(String filename, String format, int width, int height, Quality quality) {
 		if(format == null) {
 			format = guessFormat(filename);
 		}
@@ -88,10 +106,14 @@ public class OutputParameters {
 		if(width < MINIMUM_SIZE || height < MINIMUM_SIZE) {
 			throw new IllegalArgumentException("Width and Height must both be at least 4.");
 		}
+		if(quality == null) {
+			throw new IllegalArgumentException("Quality must not be null.");
+		}
 		this.filename = filename;
 		this.imageType = format;
 		this.width = width;
 		this.height = height;
+		this.quality = quality;
 	}
 
 	/**
@@ -128,4 +150,9 @@ public class OutputParameters {
 	public int getHeight() {
 		return height;
 	}
+
+	
+	public Quality getQuality() {
+		return quality;
+	}
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A caller-supplied buffer that a Tree computes pixels into.  The buffer is 
+ * a byte array, a ByteBuffer (heap or direct), or an int array, and holds 
+ * rows of pixels from the top of the image to the bottom.  The first pixel 
+ * is at offset and each row starts stride elements after the one before it, 
+ * so an image can be written into part of a larger frame or texture.  Offset
+ * and stride are counted in elements of the buffer: bytes, or ints for ARGB.
+ * 
+ * Native memory, e.g. a MemorySegment, can be written through a direct 
+ * ByteBuffer view of it.
+ */
+public final class PixelBuffer {
+	private final PixelFormat format;
+	private final int offset;
+	private final int stride;
+	private final int length;
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+	private final int[] ints;
+	
+	// rows quantized for a direct buffer, before they are copied in
+	private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>();
+	
+	/**
+	 * Write pixels of the given format into a byte array.
+	 * @param data the array to write into
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in bytes from one row to the next
+	 * @param format any format but ARGB
+	 */
+	public PixelBuffer(byte[] data, int offset, int stride, PixelFormat format) {
+		this(format, offset, stride, data.length, data, null, null);
+		if(format == PixelFormat.ARGB)
+			throw new IllegalArgumentException("ARGB pixels must be written to an int array");
+	}
+	
+	/**
+	 * Write pixels of the given format into a ByteBuffer.  The offset is an
+	 * absolute index into the buffer, and the buffer's position is not used 
+	 * or changed.
+	 * @param buffer the buffer to write into, which must be writable
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in bytes from one row to the next
+	 * @param format any format but ARGB
+	 */
+	public PixelBuffer(ByteBuffer buffer, int offset, int stride, PixelFormat format) {
+		this(format, 
+				offset + (buffer.hasArray() ? buffer.arrayOffset() : 0), 
+				stride, 
+				buffer.limit() + (buffer.hasArray() ? buffer.arrayOffset() : 0),
+				buffer.hasArray() ? buffer.array() : null, 
+				buffer.hasArray() ? null : buffer, 
+				null);
+		if(format == PixelFormat.ARGB)
+			throw new IllegalArgumentException("ARGB pixels must be written to an int array");
+		if(buffer.isReadOnly())
+			throw new IllegalArgumentException("Buffer must be writable");
+		if(offset < 0)
+			throw new IllegalArgumentException("Offset must not be negative");
+	}
+	
+	/**
+	 * Write ARGB pixels into an int array.
+	 * @param data the array to write into
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in ints from one row to the next
+	 */
+	public PixelBuffer(int[] data, int offset, int stride) {
+		this(PixelFormat.ARGB, offset, stride, data.length, null, null, data);
+	}
+	
+	private PixelBuffer(PixelFormat format, int offset, int stride, int length, 
+			byte[] bytes, ByteBuffer buffer, int[] ints) 
+	{
+		if(offset < 0)
+			throw new IllegalArgumentException("Offset must not be negative");
+		if(stride <= 0)
+			throw new IllegalArgumentException("Stride must be positive");
+		this.format = format;
+		this.offset = offset;
+		this.stride = stride;
+		this.length = length;
+		this.bytes = bytes;
+		this.buffer = buffer;
+		this.ints = ints;
+	}
+	
+	public PixelFormat getFormat() {
+		return this.format;
+	}
+	
+	/**
+	 * Check that an image of the given size fits in this buffer.
+	 */
+	void checkSize(int w, int h) {
+		long row = (long)w * this.format.getPixelSize();
+		if(row > this.stride)
+			throw new IllegalArgumentException("Stride " + this.stride + " is too small for a row of " + w + " pixels");
+		if(this.offset + (long)(h - 1) * this.stride + row > this.length)
+			throw new IllegalArgumentException("Buffer is too small for a " + w + "x" + h + " image");
+	}
+	
+	/**
+	 * Convert n pixels, starting at index k of the given color planes, into
+	 * this buffer's format and store them into row y, at every step'th 
+	 * column starting at column x.  Color nodes call this with each row they
+	 * compute.
+	 */
+	public void putRow(int y, int x, int step, float[] R, float[] G, float[] B, int k, int n) {
+		int size = this.format.getPixelSize();
+		int index = this.offset + y * this.stride + x * size;
+		if(this.ints != null) {
+			for(int i = 0; i < n; i++, k++, index += step) {
+				this.ints[index] = 0xFF000000 | (_q(R[k]) << 16) | (_q(G[k]) << 8) | _q(B[k]);
+			}
+		} else if(this.bytes != null) {
+			_putBytes(this.bytes, index, (step - 1) * size, R, G, B, k, n);
+		} else {
+			byte[] row = scratch.get();
+			if(row == null || row.length < n * size) {
+				row = new byte[n * size];
+				scratch.set(row);
+			}
+			_putBytes(row, 0, 0, R, G, B, k, n);
+			if(step == 1) {
+				this.buffer.put(index, row, 0, n * size);
+			} else {
+				for(int i = 0; i < n; i++, index += step * size) {
+					this.buffer.put(index, row, i * size, size);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Store n pixels into pix, skipping gap bytes after each one.
+	 */
+	private void _putBytes(byte[] pix, int index, int gap, float[] R, float[] G, float[] B, int k, int n) {
+		switch(this.format) {
+		case BGR:
+			for(int i = 0; i < n; i++, k++, index += gap) {
+				pix[index++] = (byte)_q(B[k]);
+				pix[index++] = (byte)_q(G[k]);
+				pix[index++] = (byte)_q(R[k]);
+			}
+			break;
+		case RGB:
+			for(int i = 0; i < n; i++, k++, index += gap) {
+				pix[index++] = (byte)_q(R[k]);
+				pix[index++] = (byte)_q(G[k]);
+				pix[index++] = (byte)_q(B[k]);
+			}
+			break;
+		case RGBA:
+			for(int i = 0; i < n; i++, k++, index += gap) {
+				pix[index++] = (byte)_q(R[k]);
+				pix[index++] = (byte)_q(G[k]);
+				pix[index++] = (byte)_q(B[k]);
+				pix[index++] = (byte)0xFF;
+			}
+			break;
+		case GRAY:
+			for(int i = 0; i < n; i++, k++, index += gap) {
+				pix[index++] = (byte)((299 * _q(R[k]) + 587 * _q(G[k]) + 114 * _q(B[k]) + 500) / 1000);
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unknown pixel format: " + this.format);
+		}
+	}
+	
+	/*
+	 * Quantize a channel value in [-1,1] to a byte, exactly as Vash always has.
+	 */
+	private static int _q(float v) {
+		return (int)Math.floor((v + 1.0f) / 2.0f * 255.0f) & 0xFF;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+/**
+ * The layout of each pixel in a PixelBuffer.
+ * 
+ * BGR, RGB and RGBA store one byte per channel, in the given order; the
+ * alpha of RGBA is always opaque.  GRAY stores a single byte of luma per
+ * pixel, weighted 0.299, 0.587, 0.114 from the red, green and blue bytes.  
+ * ARGB stores each pixel as a single int, 0xAARRGGBB, and is only available
+ * for int arrays.
+ */
+public enum PixelFormat {
+	BGR(3),
+	RGB(3),
+	RGBA(4),
+	GRAY(1),
+	ARGB(1);
+	
+	private final int size;
+	
+	private PixelFormat(int size) {
+		this.size = size;
+	}
+	
+	/**
+	 * Returns the number of buffer elements, bytes or ints, in one pixel.
+	 */
+	public int getPixelSize() {
+		return this.size;
+	}
+}
@@ -22,11 +22,18 @@ package vash;
 /**
  * A 2D plane composed of floats.  Contains extra information that we may need
  * to iterate over elements in the plane, absent any external information.
+ * 
+ * The values are stored in a single row-major array: the value at (x, y) is 
+ * at data[y * stride + x].  Since every node walks rows in its inner loop, 
+ * this keeps all plane accesses sequential in memory.
  */
 public class Plane {
 	private final int w;
 	private final int h;
-	public final float[][] data;
+	private final int stride;
+	public final float[] data;
+	// the number of extra times this plane will be put back before it is free
+	private int shares = 0;
 	
 	/**
 	 * Allocate a new plane of values with the given width and height.
@@ -34,9 +41,51 @@ public class Plane {
 	Plane(int w, int h) {
 		this.w = w;
 		this.h = h;
-		this.data = new float[w][h];
+		this.stride = w;
+		this.data = new float[w * h];
 	}
 	
 	public int getW() {return this.w;}
 	public int getH() {return this.h;}
+	
+	/**
+	 * Returns the distance in the data array between the start of one row
+	 * and the start of the next.
+	 */
+	public int getStride() {return this.stride;}
+	
+	/**
+	 * Returns the offset in the data array of the value at (x, y).
+	 */
+	public int offset(int x, int y) {return y * this.stride + x;}
+	
+	/**
+	 * Hand this plane to several consumers at once.  Each consumer puts the
+	 * plane back as usual; the plane only returns to the pool when the last 
+	 * of them does.
+	 * @param consumers the number of consumers, including the first
+	 */
+	public synchronized void share(int consumers) {
+		if(consumers < 1)
+			throw new IllegalArgumentException("A plane must have at least one consumer");
+		this.shares += consumers - 1;
+	}
+	
+	/*
+	 * Returns true if no other consumer still holds this plane.
+	 */
+	synchronized boolean isExclusive() {
+		return this.shares == 0;
+	}
+	
+	/*
+	 * Returns true if the last consumer has put this plane back.
+	 */
+	synchronized boolean release() {
+		if(this.shares > 0) {
+			this.shares--;
+			return false;
+		}
+		return true;
+	}
 }
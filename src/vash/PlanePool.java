@@ -0,0 +1,309 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A pool of planes shared by every image, tile, and thread in the process, so
+ * that a program that renders many images of the same sizes, such as a 
+ * server, stops allocating planes once it has warmed up.  Planes are pooled
+ * by their dimensions.
+ * 
+ * Each thread keeps a small magazine of recently freed planes for each of the
+ * few sizes it has used most recently, which it can take from and give back 
+ * to without any synchronization.  When a thread moves on to a new size, the
+ * magazine of the size it used least recently is emptied into the depot.  
+ * Planes that do not fit in a magazine go to a shared depot of lock-free 
+ * stacks, which holds them through soft references, so the garbage collector
+ * can take them back when memory runs short.  The depot holds at most the 
+ * pool's byte budget; planes that are freed when the depot is full are 
+ * simply dropped.  The depot also holds the 16 bit arrays that planes are
+ * packed into at Quality.COMPACT, pooled by their length.
+ */
+public final class PlanePool {
+	/**
+	 * The byte budget of the shared pool, unless it is changed with setBudget.
+	 */
+	public static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+	
+	// the most bytes of each size that a thread keeps in its magazine
+	private static final long MAGAZINE_BYTES = 256 * 1024;
+	
+	// the most sizes that a thread keeps magazines for
+	private static final int MAGAZINE_SIZES = 8;
+	
+	private static final PlanePool shared = new PlanePool(DEFAULT_BUDGET);
+	
+	/*
+	 * A pooled plane or packed array in the depot.  If the collector clears
+	 * the reference, whoever first notices takes it out of the depot's byte 
+	 * count and off its stack.
+	 */
+	private static final class Entry<T> extends SoftReference<T> {
+		final ConcurrentLinkedDeque<Entry<T>> stack;
+		final long bytes;
+		final AtomicBoolean counted = new AtomicBoolean(true);
+		
+		Entry(T value, long bytes, ConcurrentLinkedDeque<Entry<T>> stack, ReferenceQueue<Object> queue) {
+			super(value, queue);
+			this.stack = stack;
+			this.bytes = bytes;
+		}
+	}
+
+	private volatile long budget;
+	private final AtomicLong depotBytes = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+	private final ConcurrentHashMap<Long, ConcurrentLinkedDeque<Entry<Plane>>> depot = new ConcurrentHashMap<Long, ConcurrentLinkedDeque<Entry<Plane>>>();
+	private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Entry<short[]>>> packed = new ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Entry<short[]>>>();
+	private final ReferenceQueue<Object> cleared = new ReferenceQueue<Object>();
+	private final ThreadLocal<Magazines> magazines = new ThreadLocal<Magazines>() {
+		@Override
+		protected Magazines initialValue() {
+			return new Magazines();
+		}
+	};
+	
+	/*
+	 * A thread's magazines, by plane size, in order of last use.
+	 */
+	private final class Magazines extends LinkedHashMap<Long, ArrayDeque<Plane>> {
+		private static final long serialVersionUID = 1L;
+
+		Magazines() {
+			super(2 * MAGAZINE_SIZES, 0.75f, true);
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, ArrayDeque<Plane>> eldest) {
+			if(size() <= MAGAZINE_SIZES)
+				return false;
+			Plane p;
+			while((p = eldest.getValue().pollFirst()) != null) {
+				_deposit(p, eldest.getKey());
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Create a pool whose depot holds at most the given number of bytes.
+	 * Most programs should use the shared pool instead.
+	 */
+	public PlanePool(long budget) {
+		setBudget(budget);
+	}
+	
+	/**
+	 * Returns the pool that ImageParameters take their planes from.
+	 */
+	public static PlanePool getShared() {
+		return shared;
+	}
+	
+	/**
+	 * Set the most bytes of planes that the depot will hold.  Lowering the 
+	 * budget does not free planes that are already held; they are used up
+	 * first.
+	 * @param budget bytes, or 0 to only keep planes in the threads' magazines
+	 */
+	public void setBudget(long budget) {
+		if(budget < 0)
+			throw new IllegalArgumentException("Plane pool budget must not be negative");
+		this.budget = budget;
+	}
+	
+	public long getBudget() {
+		return this.budget;
+	}
+	
+	/**
+	 * Returns the number of bytes of planes and packed arrays held in the 
+	 * depot.
+	 */
+	public long getDepotBytes() {
+		_expunge();
+		return this.depotBytes.get();
+	}
+	
+	/**
+	 * Returns the number of planes this pool has had to allocate.
+	 */
+	public long getAllocatedCount() {
+		return this.allocated.get();
+	}
+	
+	/**
+	 * Drop every plane held in the depot and in the calling thread's 
+	 * magazines.  Other threads' magazines are left alone.
+	 */
+	public void clear() {
+		this.magazines.get().clear();
+		for(ConcurrentLinkedDeque<Entry<Plane>> stack : this.depot.values()) {
+			_clear(stack);
+		}
+		for(ConcurrentLinkedDeque<Entry<short[]>> stack : this.packed.values()) {
+			_clear(stack);
+		}
+	}
+	
+	private <T> void _clear(ConcurrentLinkedDeque<Entry<T>> stack) {
+		Entry<T> e;
+		while((e = stack.pollFirst()) != null) {
+			_uncount(e);
+		}
+	}
+	
+	private static long bytesOf(int w, int h) {
+		return (long)w * h * 4;
+	}
+	
+	private static long keyOf(int w, int h) {
+		return ((long)w << 32) | (h & 0xFFFFFFFFL);
+	}
+	
+	private void _uncount(Entry<?> e) {
+		if(e.counted.getAndSet(false))
+			this.depotBytes.addAndGet(-e.bytes);
+	}
+	
+	/*
+	 * Account for, and forget, planes that the collector has taken back.
+	 */
+	private void _expunge() {
+		Entry<?> e;
+		while((e = (Entry<?>)this.cleared.poll()) != null) {
+			_uncount(e);
+			e.stack.removeFirstOccurrence(e);
+		}
+	}
+	
+	/*
+	 * Returns the depot's stack for the given key, creating it if need be.
+	 */
+	private static <K, T> ConcurrentLinkedDeque<Entry<T>> _stack(ConcurrentHashMap<K, ConcurrentLinkedDeque<Entry<T>>> map, K key) {
+		ConcurrentLinkedDeque<Entry<T>> stack = map.get(key);
+		if(stack == null) {
+			stack = new ConcurrentLinkedDeque<Entry<T>>();
+			ConcurrentLinkedDeque<Entry<T>> prior = map.putIfAbsent(key, stack);
+			if(prior != null)
+				stack = prior;
+		}
+		return stack;
+	}
+	
+	/*
+	 * Take the most recently pooled value that has not been collected off a
+	 * depot stack, or return null if there is none.
+	 */
+	private <T> T _take(ConcurrentLinkedDeque<Entry<T>> stack) {
+		if(stack == null)
+			return null;
+		Entry<T> e;
+		while((e = stack.pollFirst()) != null) {
+			_uncount(e);
+			T value = e.get();
+			if(value != null)
+				return value;
+		}
+		return null;
+	}
+	
+	/*
+	 * Put a value on a depot stack, or drop it if the depot is full.
+	 */
+	private <T> void _give(T value, long bytes, ConcurrentLinkedDeque<Entry<T>> stack) {
+		if(this.depotBytes.addAndGet(bytes) > this.budget) {
+			this.depotBytes.addAndGet(-bytes);
+			return;
+		}
+		stack.offerFirst(new Entry<T>(value, bytes, stack, this.cleared));
+	}
+	
+	/**
+	 * Returns a plane of the given size, which may hold any values.
+	 */
+	Plane get(int w, int h) {
+		long key = keyOf(w, h);
+		ArrayDeque<Plane> magazine = this.magazines.get().get(key);
+		if(magazine != null && !magazine.isEmpty())
+			return magazine.pollFirst();
+		Plane p = _take(this.depot.get(key));
+		if(p != null)
+			return p;
+		this.allocated.incrementAndGet();
+		return new Plane(w, h);
+	}
+	
+	/**
+	 * Give back a plane that is no longer used.
+	 */
+	void put(Plane p) {
+		_expunge();
+		long key = keyOf(p.getW(), p.getH());
+		long bytes = bytesOf(p.getW(), p.getH());
+		if(bytes <= MAGAZINE_BYTES) {
+			Magazines mags = this.magazines.get();
+			ArrayDeque<Plane> magazine = mags.get(key);
+			if(magazine == null) {
+				magazine = new ArrayDeque<Plane>();
+				mags.put(key, magazine);
+			}
+			if((magazine.size() + 1) * bytes <= MAGAZINE_BYTES) {
+				magazine.offerFirst(p);
+				return;
+			}
+		}
+		_deposit(p, key);
+	}
+	
+	/*
+	 * Put a plane in the depot, or drop it if the depot is full.
+	 */
+	private void _deposit(Plane p, long key) {
+		_give(p, bytesOf(p.getW(), p.getH()), _stack(this.depot, key));
+	}
+	
+	/**
+	 * Returns an array of the given length to pack a plane into, which may 
+	 * hold any values.
+	 */
+	short[] getPacked(int n) {
+		short[] packed = _take(this.packed.get(n));
+		return (packed != null) ? packed : new short[n];
+	}
+	
+	/**
+	 * Give back an array taken with getPacked that is no longer used.
+	 */
+	void putPacked(short[] packed) {
+		_expunge();
+		_give(packed, packed.length * 2L, _stack(this.packed, packed.length));
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives each pass of a progressive computation; see 
+ * Tree.generateProgressively.
+ */
+public interface ProgressiveListener {
+	/**
+	 * Called on the computing thread after each pass.  The image holds the 
+	 * exact value of every scale'th pixel in each direction, and each other 
+	 * pixel is a copy of the nearest of those, so it can be shown as it is.
+	 * The same image is refined in place by the passes that follow.
+	 * @param image the full size image
+	 * @param scale 8, 4, 2, and finally 1, when the image is complete
+	 * @return false to stop without computing the passes that follow
+	 */
+	boolean passComplete(BufferedImage image, int scale);
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+
+
+/**
+ * Holds the hash that a Seed starts from, already set up with a salt, so that
+ * applications that hash many inputs with the same algorithm and salt (e.g. 
+ * a fixed salt per tenant) do not set it up again for every input: each Seed
+ * made from the context starts from a copy.  This is the keyed HMAC-SHA512 
+ * extract for algorithm 1.1, and the SHA-512 or MD5 digest that has already
+ * hashed the salt for algorithms 1 and 1-fast.
+ * 
+ * A context is never changed once it is made, so it may be shared between
+ * threads.
+ */
+public final class SaltContext {
+	private final String algorithm;
+	private final byte[] saltBytes;
+	// the prepared hash for the algorithm; the other is null
+	private final Mac extractor;
+	private final MessageDigest digest;
+	
+	/**
+	 * Prepare the hash for the given algorithm and salt.
+	 * @param algorithm one of our known algorithms
+	 * @param saltBytes 64 bytes (512 bits) of salt data or null to use the default salt
+	 * @throws InvalidAlgorithmException
+	 * @throws InvalidSaltException
+	 * @throws NoSuchAlgorithmException
+	 */
+	public SaltContext(String algorithm, byte[] saltBytes) 
+			throws NoSuchAlgorithmException 
+	{
+		this.algorithm = algorithm;
+		this.saltBytes = (saltBytes == null) ? null : saltBytes.clone();
+		if(algorithm.equals("1-fast") || algorithm.equals("1")) {
+			this.extractor = null;
+			this.digest = Seed.createDigest(algorithm, this.saltBytes);
+		} else if(algorithm.equals("1.1")) {
+			this.extractor = Seed.createExtractor(this.saltBytes);
+			this.digest = null;
+		} else {
+			throw new InvalidAlgorithmException("Unknown seed algorithm: " + algorithm);
+		}
+	}
+	
+	/**
+	 * Return the algorithm that this context was prepared for.
+	 */
+	public String getAlgorithm() {
+		return this.algorithm;
+	}
+	
+	/*
+	 * Returns a new hash for the data of a Seed, which starts from a copy of
+	 * the prepared one.  If the provider's hashes cannot be copied, a new 
+	 * one is set up from the salt.
+	 */
+	SeedData createData() throws NoSuchAlgorithmException {
+		try {
+			if(this.extractor != null) {
+				return new SeedData((Mac)this.extractor.clone());
+			}
+			return new SeedData((MessageDigest)this.digest.clone());
+		} catch(CloneNotSupportedException e) {
+			return Seed.createData(this.algorithm, this.saltBytes);
+		}
+	}
+}
@@ -23,10 +23,11 @@ import java.io.InputStream;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 
 import ec.util.MersenneTwisterFast;
@@ -45,6 +46,8 @@ class SeedProviderHVAC {
 
 	// our salt is the first 512 bits of PI, ignoring the decimal place
 	public static final int SALT_SIZE = 512 / 8;
+	// the part of the extract output that keys the expand, PRK
+	static final int PRK_SIZE = 256 / 8;
 	private static final byte[] DEFAULT_SALT = {
 		(byte)201, (byte) 15, (byte)218, (byte)162, (byte) 33, (byte)104, (byte)194, (byte) 52,
 		(byte)196, (byte)198, (byte) 98, (byte)139, (byte)128, (byte)220, (byte) 28, (byte)209,
@@ -57,12 +60,16 @@ class SeedProviderHVAC {
 	};
 	private static final byte[] INFO = "20110719 terrence@thevash.com VASH/hmacExpandInfoBytes".getBytes();
 	
-	// the expansion function, buffer, and counter
+	private static final int T_BITS = PRF_SIZE * 8;
+	
+	// the expansion function, its input, and counter; the input holds the 
+	// current T, followed by INFO and the counter, so that each T is 
+	// computed straight into the input for the next
 	private final Mac hmacExpand;
-	private byte[] Tcurrent;
+	private final byte[] Tinput;
 	private int Toffset;
-	// represents the buffer as bits, and holds a position within it
-	private final BitSet Tbits; 
+	// holds the current T as big endian words, and a bit position within it
+	private final long[] Twords;
 	private int Tbitpos;
 	
 
@@ -74,39 +81,16 @@ class SeedProviderHVAC {
 	 * input to the first cycle T(1).  In addition, we have expanded L to be
 	 * a 4 byte number, in order to provide our algorithm with enough bits
 	 * to work, even in rare cases.
+	 * 
+	 * The extract step is done by the caller, with the mac from 
+	 * createExtractor, which gives us its output; only the first PRK_SIZE 
+	 * bytes of it are used.
 	 */
-	SeedProviderHVAC(byte[] saltBytes, InputStream seedStream) 
-			throws NoSuchAlgorithmException, IOException 
+	SeedProviderHVAC(byte[] prkBase) 
+			throws NoSuchAlgorithmException 
 	{
-		// check that the salt is either null, or the correct length
-		if(saltBytes != null && saltBytes.length != SALT_SIZE) {
-			throw new InvalidSaltException("The salt for algorithm 2 must be 64 bytes long.");
-		}
-
-		// get a mac instance for extract
-		Mac macXTR = Mac.getInstance(XTR_ALGORITHM);
-
-		// init with our salt
-		if(saltBytes == null) { saltBytes = DEFAULT_SALT; }
-		SecretKeySpec salt = new SecretKeySpec(saltBytes, XTR_ALGORITHM);
-		try {
-			macXTR.init(salt);
-		} catch(InvalidKeyException e) {
-			throw new InvalidSaltException(e.toString());
-		}
-
-		// hash the input key material to get PRK
-		int cnt = 0;
-		byte[] buffer = new byte[4096];
-		while(cnt != -1) {
-			cnt = seedStream.read(buffer);
-			if(cnt == -1) { break; }
-			macXTR.update(buffer, 0, cnt);
-		}
-		byte[] prkBase = macXTR.doFinal();
-		
 		// truncate prk into key string for our expand phase
-		SecretKeySpec prk = new SecretKeySpec(prkBase, 0, PRF_SIZE, PRF_ALGORITHM);
+		SecretKeySpec prk = new SecretKeySpec(prkBase, 0, PRK_SIZE, PRF_ALGORITHM);
 
 		// get a mac instance for expand
 		hmacExpand = Mac.getInstance(PRF_ALGORITHM);
@@ -117,51 +101,74 @@ class SeedProviderHVAC {
 			System.exit(1);
 		}
 		
-		// prepare our bit set
-		Tbits = new BitSet(PRF_SIZE * 8);
+		// prepare our words
+		Twords = new long[PRF_SIZE / 8];
 		Tbitpos = 0;
 		
-		// initialize T(0) with zeros
-		Tcurrent = new byte[PRF_SIZE];
+		// initialize T(0) with zeros, followed by the info string
+		Tinput = new byte[PRF_SIZE + INFO.length + 4];
+		System.arraycopy(INFO, 0, Tinput, PRF_SIZE, INFO.length);
 		Toffset = 0;
 		
-		// initialize T(1) from T(0) and fill the bitset
+		// initialize T(1) from T(0) and fill the words
 		nextT();
 	}
 	
+	/*
+	 * Returns a new extract mac, keyed with the given salt, or with the 
+	 * default salt if it is null.
+	 */
+	static Mac createExtractor(byte[] saltBytes) throws NoSuchAlgorithmException {
+		// check that the salt is either null, or the correct length
+		if(saltBytes != null && saltBytes.length != SALT_SIZE) {
+			throw new InvalidSaltException("The salt for algorithm 2 must be 64 bytes long.");
+		}
+
+		// get a mac instance for extract
+		Mac macXTR = Mac.getInstance(XTR_ALGORITHM);
+
+		// init with our salt
+		if(saltBytes == null) { saltBytes = DEFAULT_SALT; }
+		SecretKeySpec salt = new SecretKeySpec(saltBytes, XTR_ALGORITHM);
+		try {
+			macXTR.init(salt);
+		} catch(InvalidKeyException e) {
+			throw new InvalidSaltException(e.toString());
+		}
+		return macXTR;
+	}
+	
 	private void nextT() {
 		int i, j;
-		byte[] inp = new byte[PRF_SIZE + INFO.length + 4];
-		// copy in current buffer
-		System.arraycopy(Tcurrent, 0, inp, 0, PRF_SIZE);
-		// copy over info string
-		System.arraycopy(INFO, 0, inp, PRF_SIZE, INFO.length);
 		// copy in current offset (little endian)
 		i = PRF_SIZE + INFO.length;
 		for(j = 3; j >= 0; j--) {
-			inp[i + (3 - j)] = (byte)((Toffset >> (j * 8)) & 0xFF);
+			Tinput[i + (3 - j)] = (byte)((Toffset >> (j * 8)) & 0xFF);
 		}
 
-		// get next T
-		Tcurrent = hmacExpand.doFinal(inp);
+		// get next T, over the current one
+		hmacExpand.update(Tinput);
+		try {
+			hmacExpand.doFinal(Tinput, 0);
+		} catch(ShortBufferException e) {
+			throw new IllegalStateException(e);
+		}
 		Toffset += 1;
 		
-		// fill our bitset with the bits in current
+		// fill our words with the bits in current, first bit highest
 		Tbitpos = 0;
-		for(i = 0; i < PRF_SIZE; i++) {
-			byte b = Tcurrent[i];
-			for(j = 7; j >= 0; j--) {
-				boolean b1 = ((b >> j) & 1) == 1;
-				int off = i * 8 + (7 - j);
-				Tbits.set(off, b1);
+		for(i = 0; i < Twords.length; i++) {
+			long w = 0;
+			for(j = 0; j < 8; j++) {
+				w = (w << 8) | (Tinput[i * 8 + j] & 0xFFL);
 			}
+			Twords[i] = w;
 		}
 	}
 	
 	double nextDouble() {
-		long l0 = nextBits(26);
-		long l1 = nextBits(27);
-        return ((l0 << 27) + l1) / (double)(1L << 53);
+		// the same bits as 26, then 27 bits, taken at once
+		return nextBits(53) / (double)(1L << 53);
 	}
 	
 	int nextInt(int n) {
@@ -182,11 +189,15 @@ class SeedProviderHVAC {
 	private long nextBits(int n) {
 		assert(n <= 64);
 		long out = 0;
-		for(int i = n - 1; i >= 0; i--) {
-			long b1 = Tbits.get(Tbitpos) ? 1L : 0L;
-			Tbitpos++;
-			out |= (b1 << i);
-			if(Tbitpos == Tbits.size()) {
+		while(n > 0) {
+			// take as many bits as we need, or as are left, from this word
+			int shift = Tbitpos & 63;
+			int take = Math.min(n, 64 - shift);
+			long bits = (Twords[Tbitpos >>> 6] << shift) >>> (64 - take);
+			out = (take == 64) ? bits : ((out << take) | bits);
+			n -= take;
+			Tbitpos += take;
+			if(Tbitpos == T_BITS) {
 				nextT();
 			}
 		}
@@ -226,6 +237,63 @@ public class Seed {
 		throw new InvalidAlgorithmException("Unrecognized seed algorithm: " + algo);
 	}
 
+	/**
+	 * Return the number of bytes in the hash of the salt and data for the given algorithm, 
+	 * see computeHash: 16 for 1-fast, 64 for 1, and 32 for 1.1.
+	 * @param algo
+	 * @return
+	 */
+	public static int getHashSizeForAlgorithm(String algo) {
+		if(algo.equals("1-fast")) {
+			return 128 / 8;
+		} else if(algo.equals("1")) {
+			return 512 / 8;
+		} else if(algo.equals("1.1")) {
+			return SeedProviderHVAC.PRK_SIZE;
+		}
+		throw new InvalidAlgorithmException("Unrecognized seed algorithm: " + algo);
+	}
+	
+	/**
+	 * Hash the salt and data for the given algorithm, as the constructor does, and return the 
+	 * hash that the seed's values are computed from: the MD5 or SHA-512 digest for 1-fast and 1,
+	 * or the extracted key, PRK, for 1.1.  The hash can be stored, and given to fromHash to 
+	 * create the same seed again without reading the data.  The hash is as secret as the data.
+	 * @param algorithm one of our known algorithms
+	 * @param saltBytes 64 bytes (512 bits) of salt data or null to use the default salt
+	 * @param dataStream input to the vash
+	 * @return getHashSizeForAlgorithm(algorithm) bytes
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static byte[] computeHash(String algorithm, byte[] saltBytes, InputStream dataStream) 
+			throws NoSuchAlgorithmException, IOException 
+	{
+		return toHash(algorithm, createData(algorithm, saltBytes).finish(dataStream));
+	}
+	
+	/**
+	 * Create a new Seed from a hash returned by computeHash.
+	 * @param algorithm the algorithm that the hash was computed for
+	 * @param hash the hash
+	 * @throws IllegalArgumentException if the hash is not the right size for the algorithm
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static Seed fromHash(String algorithm, byte[] hash) 
+			throws NoSuchAlgorithmException 
+	{
+		if(hash.length != getHashSizeForAlgorithm(algorithm))
+			throw new IllegalArgumentException("The hash for algorithm " + algorithm + " must be " 
+					+ getHashSizeForAlgorithm(algorithm) + " bytes long.");
+		return new Seed(algorithm, hash);
+	}
+	
+	/*
+	 * Returns the part of the finished hash of the data that seeds use.
+	 */
+	static byte[] toHash(String algorithm, byte[] hashed) {
+		return Arrays.copyOf(hashed, getHashSizeForAlgorithm(algorithm));
+	}
+
 	/**
 	 * Create a new Seed from an algorithm, salt, and data.
 	 * @param algorithm one of our known algorithms
@@ -237,38 +305,95 @@ public class Seed {
 	 */
 	public Seed(String algorithm, byte[] saltBytes, InputStream dataStream) 
 			throws NoSuchAlgorithmException, IOException 
+	{
+		this(algorithm, createData(algorithm, saltBytes).finish(dataStream));
+	}
+	
+
+	/**
+	 * Create a new Seed from the algorithm and salt of the given context, and 
+	 * data.  The context's prepared hash is copied, rather than set up again
+	 * from the salt.
+	 * @param salt the algorithm and salt to use
+	 * @param dataStream input to the vash
+	 * @throws NoSuchAlgorithmException
+	 */
+	public Seed(SaltContext salt, InputStream dataStream) 
+			throws NoSuchAlgorithmException, IOException 
+	{
+		this(salt.getAlgorithm(), salt.createData().finish(dataStream));
+	}
+	
+	
+	/*
+	 * Create a new Seed from the hash of the salt and data: the digest for 
+	 * algorithms 1 and 1-fast, or the extracted PRK for 1.1.
+	 */
+	Seed(String algorithm, byte[] hashed) 
+			throws NoSuchAlgorithmException 
 	{
 		this.algorithm = algorithm;
 		if(algorithm.equals("1-fast")) {
-			init1Fast(saltBytes, dataStream);
+			init1Fast(hashed);
 		} else if(algorithm.equals("1")) {
-			init1(saltBytes, dataStream);
+			init1(hashed);
 		} else if(algorithm.equals("1.1")) {
-			initHVAC(saltBytes, dataStream);
+			hvac = new SeedProviderHVAC(hashed);
 		} else {
 			throw new InvalidAlgorithmException("Unknown seed algorithm: " + algorithm);
 		}
 	}
 	
-
-	private void init1Fast(byte[] saltBytes, InputStream seedStream) 
-			throws	NoSuchAlgorithmException, IOException 
+	
+	/*
+	 * Returns a new hash of the data for the given algorithm, which has 
+	 * already been given the salt, if any.
+	 */
+	static SeedData createData(String algorithm, byte[] saltBytes) 
+			throws NoSuchAlgorithmException 
 	{
-		MessageDigest md = MessageDigest.getInstance("MD5");
-		if(saltBytes != null) {
-			md.update(saltBytes);
+		if(algorithm.equals("1-fast") || algorithm.equals("1")) {
+			return new SeedData(createDigest(algorithm, saltBytes));
+		} else if(algorithm.equals("1.1")) {
+			return new SeedData(createExtractor(saltBytes));
 		}
-
-		int cnt = 0;
-		byte[] buffer = new byte[4096];
-		while(cnt != -1) {
-			cnt = seedStream.read(buffer);
-			if(cnt == -1) {
-				break;
+		throw new InvalidAlgorithmException("Unknown seed algorithm: " + algorithm);
+	}
+	
+	
+	/*
+	 * Returns a new HKDF extractor for algorithm 1.1, which has already been
+	 * keyed with the given salt, if any.
+	 */
+	static Mac createExtractor(byte[] saltBytes) throws NoSuchAlgorithmException {
+		return SeedProviderHVAC.createExtractor(saltBytes);
+	}
+	
+	
+	/*
+	 * Returns a new digest for algorithm 1 or 1-fast, which has already hashed
+	 * the given salt, if any.
+	 */
+	static MessageDigest createDigest(String algo, byte[] saltBytes) 
+			throws NoSuchAlgorithmException 
+	{
+		MessageDigest md;
+		if(algo.equals("1-fast")) {
+			md = MessageDigest.getInstance("MD5");
+			if(saltBytes != null) {
+				md.update(saltBytes);
+			}
+		} else {
+			md = MessageDigest.getInstance("SHA-512");
+			if(saltBytes != null) {
+				md.update(saltBytes, 0, SALT_SIZE);
 			}
-			md.update(buffer, 0, cnt);
 		}
-		byte[] base = md.digest();
+		return md;
+	}
+	
+
+	private void init1Fast(byte[] base) {
 		long seed = 
 			(base[0] & 0xFFL) << 40 | 
 			(base[1] & 0xFFL) << 32 |
@@ -280,23 +405,7 @@ public class Seed {
 	}
 	
 	
-	private void init1(byte[] saltBytes, InputStream seedStream) throws 
-				NoSuchAlgorithmException, IOException {
-		MessageDigest md = MessageDigest.getInstance("SHA-512");
-		if(saltBytes != null) {
-			md.update(saltBytes, 0, SALT_SIZE);
-		}
-		
-		int cnt = 0;
-		byte[] buffer = new byte[4096];
-		while(cnt != -1) {
-			cnt = seedStream.read(buffer);
-			if(cnt == -1) {
-				break;
-			}
-			md.update(buffer, 0, cnt);
-		}
-		byte[] base = md.digest();
+	private void init1(byte[] base) {
 
 		// transform seed_base(64 bytes) into an int[16]
 		int[] seed = new int[16];
@@ -310,13 +419,6 @@ public class Seed {
 	}
 
 	
-	private void initHVAC(byte[] saltBytes, InputStream seedStream) 
-			throws IOException, NoSuchAlgorithmException   
-	{
-		hvac = new SeedProviderHVAC(saltBytes, seedStream);
-	}
-
-
 	/**
 	 * Get and return the next double from the seed.
 	 * @return
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+
+
+/*
+ * The hash that the data we are vashing is fed into: a digest for algorithms
+ * 1 and 1-fast, or the extract mac for 1.1, already given the salt.  
+ * 
+ * Files are mapped into memory, in large chunks, and each chunk is hashed
+ * straight from the mapping, rather than read through a small buffer; this 
+ * matters when vashing files of many gigabytes.  Any other stream, including
+ * stdin and pipes, is read through a buffer.
+ */
+final class SeedData {
+	private static final int BUFFER_SIZE = 4096;
+	private static final long MAP_CHUNK = 1L << 28;
+	
+	// exactly one of these is set
+	private final MessageDigest md;
+	private final Mac mac;
+	
+	SeedData(MessageDigest md) {
+		this.md = md;
+		this.mac = null;
+	}
+	
+	SeedData(Mac mac) {
+		this.md = null;
+		this.mac = mac;
+	}
+	
+	void update(byte[] data, int offset, int length) {
+		if(this.md != null) {
+			this.md.update(data, offset, length);
+		} else {
+			this.mac.update(data, offset, length);
+		}
+	}
+	
+	void update(ByteBuffer data) {
+		if(this.md != null) {
+			this.md.update(data);
+		} else {
+			this.mac.update(data);
+		}
+	}
+	
+	/*
+	 * Feed the rest of the stream into the hash.
+	 */
+	void update(InputStream in) throws IOException {
+		FileChannel ch = _getMappableChannel(in);
+		if(ch != null) {
+			long size = ch.size();
+			for(long pos = ch.position(); pos < size; pos += MAP_CHUNK) {
+				this.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_CHUNK, size - pos)));
+			}
+			ch.position(size);
+			return;
+		}
+		int cnt;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while((cnt = in.read(buffer)) != -1) {
+			this.update(buffer, 0, cnt);
+		}
+	}
+	
+	/*
+	 * Returns the hash of everything given to us so far.
+	 */
+	byte[] finish() {
+		return (this.md != null) ? this.md.digest() : this.mac.doFinal();
+	}
+	
+	/*
+	 * Feed the rest of the stream into the hash, and return the hash.
+	 */
+	byte[] finish(InputStream in) throws IOException {
+		this.update(in);
+		return this.finish();
+	}
+	
+	/*
+	 * Returns the channel of the stream, if it is a file with data left to 
+	 * map.  Pipes and devices report a size of 0, so they are streamed.
+	 */
+	private static FileChannel _getMappableChannel(InputStream in) throws IOException {
+		if(!(in instanceof FileInputStream))
+			return null;
+		FileChannel ch = ((FileInputStream)in).getChannel();
+		return (ch.size() > ch.position()) ? ch : null;
+	}
+}
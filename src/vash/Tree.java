@@ -18,17 +18,32 @@
  */
 package vash;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import vash.operation.ColorNode;
 import vash.operation.Operation;
 import vash.operation.OperationFactory;
 import vash.operation.OperationNode;
+import vash.operation.Optimizer;
+import vash.operation.Program;
 import vash.value.Value;
 
 
@@ -100,6 +115,25 @@ public class Tree {
 	private final ColorNode tree;
 	private final ArrayList<Value> values = new ArrayList<Value>();
 	private ImageParameters ip;
+	private int tileSize = 0;
+	private ForkJoinPool pool = null;
+	private boolean compiled = false;
+	private boolean fused = false;
+	private Program program = null;
+	private boolean optimized = false;
+	private Optimizer optimizer = null;
+
+	/**
+	 * The tile size we suggest for tiled computation.  A tile of this size 
+	 * keeps all of the intermediate planes for a deep tree in cache.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 64;
+	
+	// the scales of the passes of a progressive computation, coarsest first
+	private static final int[] PROGRESSIVE_SCALES = {8, 4, 2, 1};
+	
+	// the pools handed out by setParallelism, by parallelism
+	private static final HashMap<Integer, ForkJoinPool> POOLS = new HashMap<Integer, ForkJoinPool>();
 	
 	
 	/**
@@ -120,6 +154,9 @@ public class Tree {
 	 * @param count
 	 * @return
 	 */
+	// the inner switches cover every value of nextInt(3), so the fallthrough
+	// is never taken; it is kept as it is so that masks never change
+	@SuppressWarnings("fallthrough")
 	public static boolean[] __buildChannelMask(Seed s, int count) {
 		switch(count) {
 		case 3: return new boolean[] {true, true, true};
@@ -300,10 +337,195 @@ public class Tree {
 		this.ip = ip;
 	}
 	
+	/**
+	 * Compute images from this tree in square tiles of the given size, 
+	 * rather than over the whole image at once.  The output is identical, but
+	 * the planes for each tile are small enough to stay in the cpu cache for 
+	 * the whole computation.  The default, 0, disables tiling.
+	 * @param tileSize the tile size in pixels, e.g. DEFAULT_TILE_SIZE, or 0
+	 */
+	public void setTileSize(int tileSize) {
+		if(tileSize < 0)
+			throw new IllegalArgumentException("Tile size must not be negative");
+		this.tileSize = tileSize;
+	}
+	
+	/**
+	 * Compute images from this tree in parallel on the given pool.  If tiling
+	 * is enabled with setTileSize, the tiles are computed by the pool's 
+	 * workers.  Otherwise, the whole image is computed at once and workers
+	 * compute independent subtrees (e.g. the color channels) concurrently,
+	 * when they are expensive enough to be worth it; this suits mid-size 
+	 * images best.  The output is identical to the serial computation.
+	 * @param pool the pool to compute on, or null to compute on the calling thread
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Compute images from this tree with the given number of threads.  Trees
+	 * that ask for the same parallelism share a single ForkJoinPool, which is
+	 * created when it is first asked for and lives as long as the process;
+	 * its threads are daemons that exit when they have been idle for a while.
+	 * @param parallelism the number of threads to use; 1 computes serially
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		this.pool = (parallelism == 1) ? null : _getPool(parallelism);
+	}
+	
+	private static synchronized ForkJoinPool _getPool(int parallelism) {
+		ForkJoinPool pool = POOLS.get(parallelism);
+		if(pool == null) {
+			pool = new ForkJoinPool(parallelism);
+			POOLS.put(parallelism, pool);
+		}
+		return pool;
+	}
+	
+	/**
+	 * Compute images from this tree by first compiling it into a Program,
+	 * rather than by recursing through the tree for every image.  The 
+	 * program is compiled when it is first needed and re-compiled when the
+	 * tree's values change.  The output is identical.  A compiled tree 
+	 * computes serially, unless tiling is enabled, in which case the tiles
+	 * are computed in parallel on the pool, as usual.  Images computed at 
+	 * Quality.PREVIEW are never compiled.
+	 * @param compiled
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+		this.program = null;
+	}
+	
+	/**
+	 * Compile this tree, as with setCompiled, and then generate a class with
+	 * a single fused loop that computes each pixel straight from its 
+	 * coordinates.  Each new class must be compiled again by the JIT, but 
+	 * the classes are cached by the shape of the tree, so this is worthwhile
+	 * for trees that are rendered many times, at many sizes, or in 
+	 * animations.  If no class can be generated for the tree, the compiled 
+	 * program is interpreted.  The output is identical.
+	 * @param fused
+	 */
+	public void setFused(boolean fused) {
+		this.compiled = this.compiled || fused;
+		this.fused = fused;
+		this.program = null;
+	}
+	
+	/**
+	 * Compute images from an optimized copy of this tree, in which redundant
+	 * nodes are removed and equal subtrees are computed only once; see 
+	 * Optimizer.  The copy is made when it is first needed and re-made when 
+	 * the tree's values change, so this only pays for trees that are 
+	 * rendered many times without changing.  Seeded trees rarely have much 
+	 * to remove, so this is disabled by default.  The output is identical.
+	 * @param optimized
+	 */
+	public void setOptimized(boolean optimized) {
+		this.optimized = optimized;
+		this.optimizer = null;
+		this.program = null;
+	}
+	
+	/**
+	 * Returns the number of nodes that the optimizer removed from this tree,
+	 * which is also the number of planes that are no longer computed for 
+	 * each image or tile.
+	 */
+	public int getNodesSaved() {
+		return this.optimized ? this._getOptimizer().getNodesSaved() : 0;
+	}
+	
+	/**
+	 * Returns the number of planes by which the optimizer reduced the peak 
+	 * count of planes live at once while computing this tree.
+	 */
+	public int getPlanesSaved() {
+		return this.optimized ? this._getOptimizer().getPlanesSaved() : 0;
+	}
+
+	/**
+	 * Returns the number of planes that must be live at once to compute an
+	 * image, or a tile, from this tree on a single thread.
+	 */
+	public int getPlaneNeed() {
+		return this._getTree().getPlaneNeed();
+	}
+
+	/**
+	 * Returns an upper bound on the bytes of planes that computing the
+	 * current frame will hold at once, with the current generation
+	 * parameters, tile size, and parallelism.  Applications can use this to
+	 * decide whether to render an image, or to tile it, before they run out
+	 * of memory.  Compiled trees need much less than this.
+	 */
+	public long estimatePeakBytes() {
+		if(this.ip == null)
+			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
+		long w = this.ip.getW();
+		long h = this.ip.getH();
+		int threads = (this.pool == null) ? 1 : this.pool.getParallelism();
+		if(this.tileSize == 0) {
+			// forked subtrees hold their planes at the same time as ours
+			return threads * (long)this.getPlaneNeed() * w * h * 4;
+		}
+		long tw = Math.min(this.tileSize, w);
+		long th = Math.min(this.tileSize, h);
+		return threads * (long)this.getPlaneNeed() * tw * th * 4;
+	}
+	
 	void setTime(double t, double dt) {
 		for(Value v : this.values) {
 			v.setTime(t, dt);
 		}
+		this.optimizer = null;
+		this.program = null;
+	}
+	
+	/*
+	 * Compute the pixels covered by the given image or tile into out.
+	 */
+	private void _compute(ImageParameters tip, PixelBuffer out) {
+		if(this._isCompiled(tip)) {
+			this._getProgram().run(tip, out);
+		} else {
+			this._getTree().compute(tip, out);
+		}
+	}
+	
+	/*
+	 * Programs only compute canonical images, so previews always use the tree.
+	 */
+	private boolean _isCompiled(ImageParameters tip) {
+		return this.compiled && tip.getQuality() == Quality.CANONICAL;
+	}
+	
+	private synchronized Optimizer _getOptimizer() {
+		if(this.optimizer == null) {
+			this.optimizer = new Optimizer(this.tree);
+		}
+		return this.optimizer;
+	}
+	
+	/*
+	 * The tree that we compute images from.
+	 */
+	private ColorNode _getTree() {
+		return this.optimized ? this._getOptimizer().getTree() : this.tree;
+	}
+	
+	private synchronized Program _getProgram() {
+		if(this.program == null) {
+			this.program = Program.compile(this._getTree());
+			if(this.fused) {
+				this.program.fuse();
+			}
+		}
+		return this.program;
 	}
 	
 	
@@ -314,6 +536,366 @@ public class Tree {
 	public byte[] generateCurrentFrame() {
 		if(this.ip == null)
 			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
-		return this.tree.compute(this.ip, true);
+		byte[] pix = new byte[this.ip.getW() * this.ip.getH() * 3];
+		this._generate(new PixelBuffer(pix, 0, this.ip.getW() * 3, PixelFormat.BGR));
+		return pix;
+	}
+	
+	/**
+	 * Compute an image from this tree into the given buffer, which must be 
+	 * large enough to hold an image of the size of our ImageParameters.
+	 */
+	public void generateCurrentFrame(PixelBuffer out) {
+		if(this.ip == null)
+			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
+		out.checkSize(this.ip.getW(), this.ip.getH());
+		this._generate(out);
+	}
+	
+	/**
+	 * Compute an image from this tree into a byte array.  See PixelBuffer.
+	 * @param pix the array to write into
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in bytes from one row to the next
+	 * @param format any format but ARGB
+	 */
+	public void generateCurrentFrame(byte[] pix, int offset, int stride, PixelFormat format) {
+		this.generateCurrentFrame(new PixelBuffer(pix, offset, stride, format));
+	}
+	
+	/**
+	 * Compute an image from this tree into a heap or direct ByteBuffer, 
+	 * starting at the absolute index offset.  See PixelBuffer.
+	 * @param buffer the buffer to write into
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in bytes from one row to the next
+	 * @param format any format but ARGB
+	 */
+	public void generateCurrentFrame(ByteBuffer buffer, int offset, int stride, PixelFormat format) {
+		this.generateCurrentFrame(new PixelBuffer(buffer, offset, stride, format));
+	}
+	
+	/**
+	 * Compute an image from this tree into an int array of ARGB pixels.
+	 * @param argb the array to write into
+	 * @param offset the index of the top left pixel
+	 * @param stride the distance in ints from one row to the next
+	 */
+	public void generateCurrentFrame(int[] argb, int offset, int stride) {
+		this.generateCurrentFrame(new PixelBuffer(argb, offset, stride));
+	}
+	
+	/**
+	 * Compute an image from this tree as a BufferedImage of TYPE_3BYTE_BGR.  
+	 * The pixels are computed directly into the image's raster, without an
+	 * intermediate pixel buffer.
+	 */
+	public BufferedImage generateCurrentImage() {
+		if(this.ip == null)
+			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
+		BufferedImage image = new BufferedImage(this.ip.getW(), this.ip.getH(), BufferedImage.TYPE_3BYTE_BGR);
+		this.generateCurrentImage(image);
+		return image;
+	}
+	
+	/**
+	 * Compute an image from this tree into the given image, which must have 
+	 * the size of our ImageParameters.  If the image is a TYPE_3BYTE_BGR, 
+	 * TYPE_INT_RGB or TYPE_INT_ARGB image that owns its whole raster, the 
+	 * pixels are computed directly into the raster; any other image is drawn
+	 * from a computed frame.
+	 */
+	public void generateCurrentImage(BufferedImage image) {
+		if(this.ip == null)
+			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
+		int w = this.ip.getW();
+		int h = this.ip.getH();
+		if(image.getWidth() != w || image.getHeight() != h)
+			throw new IllegalArgumentException("Image must be " + w + "x" + h + " pixels");
+		PixelBuffer out = _getImageBuffer(image);
+		if(out != null) {
+			this._generate(out);
+			return;
+		}
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(Output.dataToImage(this.generateCurrentFrame(), w, h), 0, 0, null);
+		} finally {
+			g.dispose();
+		}
+	}
+	
+	/**
+	 * Compute an image from this tree progressively, for interactive use.  
+	 * The first pass computes every 8th pixel in each direction, and each 
+	 * pass after it halves the distance between computed pixels, down to 
+	 * every pixel.  Pixels that were computed by earlier passes are not 
+	 * computed again, so all of the passes together cost about as much as 
+	 * generateCurrentFrame, and the final image is identical to it.  After
+	 * each pass, the listener is given the image, with the pixels that have
+	 * not yet been computed filled in from their computed neighbors.  Passes
+	 * are not tiled, but may use our ForkJoinPool.
+	 * @return the image, which is only partly computed if the listener 
+	 * 			stopped the computation
+	 */
+	public BufferedImage generateProgressively(ProgressiveListener listener) {
+		if(this.ip == null)
+			throw new IllegalArgumentException("setGenerationParameters must be called to set ImageParameters");
+		int w = this.ip.getW();
+		int h = this.ip.getH();
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] pix = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		PixelBuffer out = new PixelBuffer(pix, 0, w * 3, PixelFormat.BGR);
+		int prior = 0;
+		for(int scale : PROGRESSIVE_SCALES) {
+			if(prior == 0) {
+				this._generateSamples(this.ip.getSamples(0, 0, scale), out);
+			} else {
+				// the pixels of the prior pass lie on every other row and 
+				// column of this one, so we compute the other three quarters
+				for(int k = 1; k < 4; k++) {
+					int x = (k & 1) * scale;
+					int y = (k >> 1) * scale;
+					if(x < w && y < h)
+						this._generateSamples(this.ip.getSamples(x, y, prior), out);
+				}
+			}
+			if(scale > 1)
+				_fillBlocks(pix, w, h, scale);
+			prior = scale;
+			if(!listener.passComplete(image, scale))
+				break;
+		}
+		return image;
+	}
+	
+	/**
+	 * Compute square images of each of the given sizes from this tree at 
+	 * once, e.g. for the icons of a single hash.  Every size is split into 
+	 * tiles of our tile size, or DEFAULT_TILE_SIZE if tiling is disabled, 
+	 * and the tiles of all sizes are computed as a single job, so that our 
+	 * ForkJoinPool, if any, keeps every worker busy until the last size is
+	 * done.  The tree is optimized, and compiled, only once for all sizes.
+	 * Each image is identical to the one generateCurrentImage computes at 
+	 * its size, and at the quality of our ImageParameters, if any.
+	 * @param sizes the width and height of each image
+	 * @return an image of TYPE_3BYTE_BGR for each size, in the same order
+	 */
+	public BufferedImage[] generatePyramid(int... sizes) {
+		Quality quality = (this.ip == null) ? Quality.CANONICAL : this.ip.getQuality();
+		int tileSize = (this.tileSize == 0) ? DEFAULT_TILE_SIZE : this.tileSize;
+		BufferedImage[] images = new BufferedImage[sizes.length];
+		ArrayList<ImageParameters> tiles = new ArrayList<ImageParameters>();
+		ArrayList<PixelBuffer> outs = new ArrayList<PixelBuffer>();
+		for(int n = 0; n < sizes.length; n++) {
+			int size = sizes[n];
+			if(size <= 0)
+				throw new IllegalArgumentException("Sizes must be positive");
+			ImageParameters pip = new ImageParameters(size, size, quality);
+			images[n] = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+			PixelBuffer out = _getImageBuffer(images[n]);
+			for(int y = 0; y < size; y += tileSize) {
+				for(int x = 0; x < size; x += tileSize) {
+					tiles.add(pip.getTile(x, y, Math.min(tileSize, size - x), Math.min(tileSize, size - y)));
+					outs.add(out);
+				}
+			}
+		}
+		if(this.pool != null) {
+			this.pool.invoke(new TileListTask(tiles, outs, 0, tiles.size()));
+		} else {
+			for(int k = 0; k < tiles.size(); k++) {
+				this._compute(tiles.get(k), outs.get(k));
+			}
+		}
+		return images;
+	}
+	
+	private void _generateSamples(ImageParameters sip, PixelBuffer out) {
+		if(this.pool != null && !this._isCompiled(sip)) {
+			this.pool.invoke(new FrameTask(sip, out));
+		} else {
+			this._compute(sip, out);
+		}
+	}
+	
+	/*
+	 * Copy each pixel that was computed at the given scale over the scale by
+	 * scale block of pixels that it is the first of.  Rows are stored bottom 
+	 * to top, so the block extends upwards in the buffer.
+	 */
+	private static void _fillBlocks(byte[] pix, int w, int h, int scale) {
+		int rowBytes = w * 3;
+		for(int y = 0; y < h; y += scale) {
+			int base = (h - 1 - y) * rowBytes;
+			for(int x = 0; x < w; x += scale) {
+				int src = base + x * 3;
+				for(int i = x + 1; i < Math.min(x + scale, w); i++) {
+					System.arraycopy(pix, src, pix, base + i * 3, 3);
+				}
+			}
+			for(int j = y + 1; j < Math.min(y + scale, h); j++) {
+				System.arraycopy(pix, base, pix, (h - 1 - j) * rowBytes, rowBytes);
+			}
+		}
+	}
+	
+	/*
+	 * Return a buffer over the data of the image, if its pixels are stored 
+	 * in a layout that we can compute into: BGR bytes or packed ints, with 
+	 * rows from top to bottom and no padding.  Returns null for any other 
+	 * image.
+	 */
+	private static PixelBuffer _getImageBuffer(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		if(raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0)
+			return null;
+		int w = image.getWidth();
+		int h = image.getHeight();
+		DataBuffer db = raster.getDataBuffer();
+		if(db.getNumBanks() != 1 || db.getOffset() != 0 || db.getSize() != w * h * (db instanceof DataBufferByte ? 3 : 1))
+			return null;
+		switch(image.getType()) {
+		case BufferedImage.TYPE_3BYTE_BGR:
+			if(!(raster.getSampleModel() instanceof ComponentSampleModel) || !(db instanceof DataBufferByte))
+				return null;
+			ComponentSampleModel csm = (ComponentSampleModel)raster.getSampleModel();
+			if(csm.getPixelStride() != 3 || csm.getScanlineStride() != w * 3 || !Arrays.equals(csm.getBandOffsets(), new int[] {2, 1, 0}))
+				return null;
+			return new PixelBuffer(((DataBufferByte)db).getData(), 0, w * 3, PixelFormat.BGR);
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+			if(!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) || !(db instanceof DataBufferInt))
+				return null;
+			if(((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride() != w)
+				return null;
+			return new PixelBuffer(((DataBufferInt)db).getData(), 0, w);
+		default:
+			return null;
+		}
+	}
+	
+	/*
+	 * Compute the full image into out, with whatever tiling and parallelism
+	 * we were configured for.
+	 */
+	private void _generate(PixelBuffer out) {
+		if(this.pool != null && this.tileSize == 0 && !this._isCompiled(this.ip)) {
+			this.pool.invoke(new FrameTask(this.ip, out));
+			return;
+		}
+		if(this.pool != null && this.tileSize != 0) {
+			this._generateParallel(out);
+			return;
+		}
+		if(this.tileSize == 0) {
+			this._compute(this.ip, out);
+			return;
+		}
+		int w = this.ip.getW();
+		int h = this.ip.getH();
+		for(int y = 0; y < h; y += this.tileSize) {
+			for(int x = 0; x < w; x += this.tileSize) {
+				int tw = Math.min(this.tileSize, w - x);
+				int th = Math.min(this.tileSize, h - y);
+				this._compute(this.ip.getTile(x, y, tw, th), out);
+			}
+		}
+	}
+	
+	
+	/*
+	 * Compute a range of tiles, splitting the range in half until we get 
+	 * down to a single tile, so that idle workers can steal the other halves.
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final PixelBuffer out;
+		private final int tileSize;
+		private final int columns;
+		private final int first;
+		private final int last;
+		
+		TileTask(PixelBuffer out, int tileSize, int columns, int first, int last) {
+			this.out = out;
+			this.tileSize = tileSize;
+			this.columns = columns;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.last - this.first > 1) {
+				int mid = (this.first + this.last) >>> 1;
+				invokeAll(new TileTask(this.out, this.tileSize, this.columns, this.first, mid),
+						  new TileTask(this.out, this.tileSize, this.columns, mid, this.last));
+				return;
+			}
+			int x = (this.first % this.columns) * this.tileSize;
+			int y = (this.first / this.columns) * this.tileSize;
+			int tw = Math.min(this.tileSize, ip.getW() - x);
+			int th = Math.min(this.tileSize, ip.getH() - y);
+			_compute(ip.getTile(x, y, tw, th), this.out);
+		}
+	}
+	
+	/*
+	 * Compute a range of a list of tiles, each into its own buffer, as 
+	 * TileTask does for the tiles of a single image.
+	 */
+	private class TileListTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<ImageParameters> tiles;
+		private final ArrayList<PixelBuffer> outs;
+		private final int first;
+		private final int last;
+		
+		TileListTask(ArrayList<ImageParameters> tiles, ArrayList<PixelBuffer> outs, int first, int last) {
+			this.tiles = tiles;
+			this.outs = outs;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.last - this.first > 1) {
+				int mid = (this.first + this.last) >>> 1;
+				invokeAll(new TileListTask(this.tiles, this.outs, this.first, mid),
+						  new TileListTask(this.tiles, this.outs, mid, this.last));
+				return;
+			}
+			if(this.last > this.first)
+				_compute(this.tiles.get(this.first), this.outs.get(this.first));
+		}
+	}
+	
+	private void _generateParallel(PixelBuffer out) {
+		int w = this.ip.getW();
+		int h = this.ip.getH();
+		int columns = (w + this.tileSize - 1) / this.tileSize;
+		int rows = (h + this.tileSize - 1) / this.tileSize;
+		this.pool.invoke(new TileTask(out, this.tileSize, columns, 0, columns * rows));
+	}
+	
+	/*
+	 * Compute the full image in a pool, so that nodes can fork their children.
+	 */
+	private class FrameTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ImageParameters fip;
+		private final PixelBuffer out;
+		
+		FrameTask(ImageParameters fip, PixelBuffer out) {
+			this.fip = fip;
+			this.out = out;
+		}
+
+		@Override
+		protected void compute() {
+			_getTree().compute(this.fip, this.out);
+		}
 	}
 }
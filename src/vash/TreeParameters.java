@@ -21,6 +21,7 @@ package vash;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 
@@ -46,6 +47,110 @@ public class TreeParameters {
 	private final double fps;
 
 	
+	/**
+	 * Builds TreeParameters from data that arrives in pieces, e.g. the body of
+	 * an upload, without collecting it or adapting it to an InputStream.  Each
+	 * piece is hashed as it is given.  The result is the same as for the 
+	 * concatenation of all the pieces, given as a stream.
+	 * <pre>
+	 * TreeParameters.Builder b = new TreeParameters.Builder("1.1", null);
+	 * b.update(chunk, 0, n);
+	 * ...
+	 * TreeParameters tp = b.finish();
+	 * </pre>
+	 */
+	public static final class Builder {
+		private final String algorithm;
+		private SeedData data;
+		
+		/**
+		 * Start building parameters for the given algorithm and salt.
+		 * @param algo the algorithm identification string
+		 * @param salt the salt, or null to use the default salt
+		 * @throws NoSuchAlgorithmException
+		 */
+		public Builder(String algo, byte[] salt) 
+				throws NoSuchAlgorithmException
+		{
+			this.algorithm = algo;
+			this.data = Seed.createData(algo, salt);
+		}
+		
+		/**
+		 * Start building parameters for the algorithm and salt of the given 
+		 * context.
+		 * @param salt
+		 * @throws NoSuchAlgorithmException
+		 */
+		public Builder(SaltContext salt) 
+				throws NoSuchAlgorithmException
+		{
+			this.algorithm = salt.getAlgorithm();
+			this.data = salt.createData();
+		}
+		
+		/**
+		 * Hash the next length bytes of data, starting at offset.
+		 * @return this builder
+		 */
+		public Builder update(byte[] data, int offset, int length) {
+			this._getData().update(data, offset, length);
+			return this;
+		}
+		
+		/**
+		 * Hash the next bytes of data.
+		 * @return this builder
+		 */
+		public Builder update(byte[] data) {
+			return this.update(data, 0, data.length);
+		}
+		
+		/**
+		 * Hash the remaining bytes of the buffer, from its position to its 
+		 * limit.  The position is advanced to the limit.
+		 * @return this builder
+		 */
+		public Builder update(ByteBuffer data) {
+			this._getData().update(data);
+			return this;
+		}
+		
+		/**
+		 * Returns the parameters for all of the data given so far.  The 
+		 * builder cannot be used after this.
+		 * @throws NoSuchAlgorithmException
+		 */
+		public TreeParameters finish() 
+				throws NoSuchAlgorithmException
+		{
+			return new TreeParameters(this.algorithm, new Seed(this.algorithm, this._finish()));
+		}
+		
+		/**
+		 * Returns the hash of the salt and all of the data given so far, 
+		 * rather than the parameters; see Seed.computeHash.  The hash can be
+		 * stored and given to createInstanceFromHash later.  The builder 
+		 * cannot be used after this.
+		 */
+		public byte[] finishHash() {
+			return Seed.toHash(this.algorithm, this._finish());
+		}
+		
+		private byte[] _finish() {
+			byte[] hashed = this._getData().finish();
+			this.data = null;
+			return hashed;
+		}
+		
+		private SeedData _getData() {
+			if(this.data == null)
+				throw new IllegalStateException("The builder is already finished");
+			return this.data;
+		}
+	}
+	
+	
 	/**
 	 * This method instantiates a new TreeParameters for data Bytes.  The advantage of this method
 	 * over one of the constructors is that it ignores the needlessly general IOException, as 
@@ -58,11 +163,7 @@ public class TreeParameters {
 	public static TreeParameters createInstance(String algo, byte[] dataBytes) 
 			throws NoSuchAlgorithmException
 	{
-		try {
-			return new TreeParameters(algo, null, new ByteArrayInputStream(dataBytes));
-		} catch(IOException e) { // not going to happen on a ByteArrayInputStream :-/
-			return null;
-		}
+		return new Builder(algo, null).update(dataBytes).finish();
 	}
 
 	
@@ -79,11 +180,39 @@ public class TreeParameters {
 	public static TreeParameters createInstance(String algo, byte[] salt, byte[] dataBytes) 
 			throws NoSuchAlgorithmException
 	{
-		try {
-			return new TreeParameters(algo, salt, new ByteArrayInputStream(dataBytes));
-		} catch(IOException e) { // not going to happen on a ByteArrayInputStream :-/
-			return null;
-		}
+		return new Builder(algo, salt).update(dataBytes).finish();
+	}
+
+	
+	/**
+	 * This method instantiates a new TreeParameters for data Bytes, as above, with the algorithm
+	 * and salt of the given context.  This is cheaper than passing the salt, when many instances
+	 * are made with the same salt.
+	 * @param salt
+	 * @param dataBytes
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static TreeParameters createInstance(SaltContext salt, byte[] dataBytes) 
+			throws NoSuchAlgorithmException
+	{
+		return new Builder(salt).update(dataBytes).finish();
+	}
+
+	
+	/**
+	 * This method instantiates a new TreeParameters from the hash of a salt and data, as returned
+	 * by Seed.computeHash or Builder.finishHash.  This costs the same for any size of data, so 
+	 * applications can store the hash of large objects and skip reading them again.
+	 * @param algo the algorithm that the hash was computed for
+	 * @param hash
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static TreeParameters createInstanceFromHash(String algo, byte[] hash) 
+			throws NoSuchAlgorithmException
+	{
+		return new TreeParameters(algo, Seed.fromHash(algo, hash));
 	}
 
 	
@@ -167,7 +296,24 @@ public class TreeParameters {
 	public TreeParameters(String algo, byte[] saltBytes, InputStream dataStream) 
 			throws IOException, NoSuchAlgorithmException
 	{
-		seed = new Seed(algo, saltBytes, dataStream);
+		this(algo, new Seed(algo, saltBytes, dataStream));
+	}
+
+	
+	/**
+	 * Initialize new tree generation parameters from a prepared salt and input data.
+	 * @param salt the algorithm and salt, see SaltContext
+	 * @param dataStream
+	 */
+	public TreeParameters(SaltContext salt, InputStream dataStream) 
+			throws IOException, NoSuchAlgorithmException
+	{
+		this(salt.getAlgorithm(), new Seed(salt, dataStream));
+	}
+
+	
+	private TreeParameters(String algo, Seed seed) {
+		this.seed = seed;
 
 		ops = new HashMap<Operation, OpParams>();
 		if(algo.equals("1") || algo.equals("1-fast")) {
@@ -19,7 +19,6 @@
 package vash;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
@@ -54,6 +53,10 @@ public class Vash {
 		
 		// load a tree
 		Tree tree = new Tree(tp);
+		tree.setParallelism(opts.getThreads());
+		if(opts.getThreads() > 1) {
+			tree.setTileSize(Tree.DEFAULT_TILE_SIZE);
+		}
 		
 		// do debug tasks, if specified
 		if(opts.hasADebugFlagSet("TREE", "ENTROPY")) {
@@ -109,12 +112,7 @@ public class Vash {
 	public static BufferedImage createImage(String algorithm, byte[] data, int width, int height)
 			throws NoSuchAlgorithmException
 	{
-		try {
-			InputStream dataStream = new ByteArrayInputStream(data);
-			return createImage(algorithm, dataStream, width, height);
-		} catch(IOException e) { // not going to happen on a ByteArrayInputStream
-			return null;
-		}
+		return createImage(algorithm, null, data, width, height);
 	}
 
 	
@@ -136,8 +134,7 @@ public class Vash {
 		ImageParameters ip = new ImageParameters(width, height);
 		tree.setGenerationParameters(ip);
 		
-		byte[] pix = tree.generateCurrentFrame();
-		return Output.dataToImage(pix, width, height);
+		return tree.generateCurrentImage();
 	}
 
 	
@@ -172,11 +169,13 @@ public class Vash {
 	public static BufferedImage createImage(String algorithm, byte[] salt, byte[] data, int width, int height)
 			throws NoSuchAlgorithmException
 	{
-		try {
-			return createImage(algorithm, salt, new ByteArrayInputStream(data), width, height);
-		} catch(IOException e) { // not going to happen on a ByteArrayInputStream
-			return null;
-		}
+		TreeParameters tp = TreeParameters.createInstance(algorithm, salt, data);
+		Tree tree = new Tree(tp);
+
+		ImageParameters ip = new ImageParameters(width, height);
+		tree.setGenerationParameters(ip);
+		
+		return tree.generateCurrentImage();
 	}
 
 
@@ -192,16 +191,61 @@ public class Vash {
 	 */
 	public static BufferedImage createImage(String algorithm, byte[] salt, InputStream data, int width, int height)
 			throws IOException, NoSuchAlgorithmException
+	{
+		return createImage(algorithm, salt, data, width, height, Quality.CANONICAL);
+	}
+
+
+	/**
+	 * The super-high-level interface to Vash.  This takes an algorithm  specifier, 
+	 * a salt, data as a Stream, the requested width and height, and a quality and 
+	 * will return the image for the given algorithm and data.  Only images created
+	 * at Quality.CANONICAL are Vash output; see Quality.
+	 * @param algorithm The algorithm selector (see documentation)
+	 * @param salt the salt value, appropriately sized for algorithm, or null
+	 * @param data the data to hash
+	 * @param width the output image width
+	 * @param height the output image height
+	 * @param quality the quality at which to compute the image
+	 */
+	public static BufferedImage createImage(String algorithm, byte[] salt, InputStream data, int width, int height, 
+			Quality quality)
+			throws IOException, NoSuchAlgorithmException
 	{
 		TreeParameters tp = new TreeParameters(algorithm, salt, data);
 		Tree tree = new Tree(tp);
 
-		ImageParameters ip = new ImageParameters(width, height);
+		ImageParameters ip = new ImageParameters(width, height, quality);
 		tree.setGenerationParameters(ip);
 		
-		byte[] pix = tree.generateCurrentFrame();
-		return Output.dataToImage(pix, width, height);
+		return tree.generateCurrentImage();
 	}
 
-}
 
+	/**
+	 * The super-high-level interface to Vash.  This takes an algorithm  specifier, 
+	 * a salt, data as a Stream, an image, and a quality and computes the image 
+	 * for the given algorithm and data into the given image, at its size.  A 
+	 * TYPE_3BYTE_BGR image is computed into directly, so callers that create many
+	 * images can reuse one image and skip allocating and copying a frame each time.
+	 * @param algorithm The algorithm selector (see documentation)
+	 * @param salt the salt value, appropriately sized for algorithm, or null
+	 * @param data the data to hash
+	 * @param image the image to draw into
+	 * @param quality the quality at which to compute the image
+	 * @return the given image
+	 */
+	public static BufferedImage createImage(String algorithm, byte[] salt, InputStream data, BufferedImage image, 
+			Quality quality)
+			throws IOException, NoSuchAlgorithmException
+	{
+		TreeParameters tp = new TreeParameters(algorithm, salt, data);
+		Tree tree = new Tree(tp);
+
+		ImageParameters ip = new ImageParameters(image.getWidth(), image.getHeight(), quality);
+		tree.setGenerationParameters(ip);
+		
+		tree.generateCurrentImage(image);
+		return image;
+	}
+}
@@ -27,6 +27,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.JApplet;
@@ -82,6 +83,7 @@ public class VashApplet extends JApplet implements ActionListener {
 
 	private VashImagePanel hashImagePanel;
 	private JTextField hashInput;
+	private SwingWorker<BufferedImage, BufferedImage> worker = null;
 	
 	public VashApplet () {}
 	
@@ -127,19 +129,42 @@ public class VashApplet extends JApplet implements ActionListener {
 		hashImagePanel.setImage(null);
 		repaint();
 		
-		//Background task for loading images.
-		SwingWorker<BufferedImage, Object> worker = new SwingWorker<BufferedImage, Object>() {
+		// stop drawing the last image, if it is not yet done
+		if(this.worker != null) {
+			this.worker.cancel(false);
+		}
+		
+		//Background task for loading images.  Each coarse pass of the image is 
+		//shown as soon as it is ready, so that typing stays responsive.
+		this.worker = new SwingWorker<BufferedImage, BufferedImage>() {
 			@Override
 			public BufferedImage doInBackground() {
 				try {
-					return Vash.createImage(ALGORITHM, _inp, SIZE, SIZE);
+					Tree tree = new Tree(TreeParameters.createInstance(ALGORITHM, _inp.getBytes()));
+					tree.setGenerationParameters(new ImageParameters(SIZE, SIZE));
+					return tree.generateProgressively(new ProgressiveListener() {
+						@Override
+						public boolean passComplete(BufferedImage image, int scale) {
+							publish(image);
+							return !isCancelled();
+						}
+					});
 				} catch(NoSuchAlgorithmException e) {
 					hashImagePanel.setLabel(e.getLocalizedMessage());
 					return null;
 				}
 			}
 			@Override
+			protected void process(List<BufferedImage> passes) {
+				if(isCancelled())
+					return;
+				hashImagePanel.setImage(passes.get(passes.size() - 1));
+				repaint();
+			}
+			@Override
 			public void done() {
+				if(isCancelled())
+					return;
 				try {
 					hashImagePanel.setImage(get());
 				} catch (InterruptedException e) {
@@ -152,7 +177,7 @@ public class VashApplet extends JApplet implements ActionListener {
 				repaint();
 			}
 	    };
-		worker.execute();
+		this.worker.execute();
 	}
 	
 	
@@ -34,14 +34,25 @@ public class Absolute extends UnaryOperationNode {
 	@Override
 	public Plane compute(ImageParameters ip) {
 		Plane A = _children[0].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				out.data[i][j] = Math.abs(A.data[i][j]);
-			}
-	    }
-	    ip.putPlane(A);
+		Plane out = ip.getResultPlane(A);
+		Kernels.get().absolute(out.data, A.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A);
 	    return out;
 	}
-}
 
+	@Override
+	OperationNode simplify() {
+		// |(|a|)| is exactly |a|
+		if(_children[0] instanceof Absolute)
+			return _children[0];
+		// |-a| is exactly |a|
+		if(_children[0] instanceof Invert)
+			_children[0] = _children[0].getChild(0);
+		return this;
+	}
+
+	@Override
+	int emit(Program.Builder b) {
+		return b.emit(Program.OP_ABSOLUTE, _children[0].emit(b), -1);
+	}
+}
@@ -33,16 +33,27 @@ public class Add extends BinaryOperationNode {
 	
 	@Override
 	public Plane compute(ImageParameters ip) {
-		Plane A = _children[0].compute(ip);
-		Plane B = _children[1].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				out.data[i][j] = (A.data[i][j] + B.data[i][j]) / 2.0f;
-			}
-	    }
-	    ip.putPlane(A);
-	    ip.putPlane(B);
+		Plane[] in = computeChildren(ip);
+		Plane A = in[0];
+		Plane B = in[1];
+		Plane out = ip.getResultPlane(A, B);
+		Kernels.get().add(out.data, A.data, B.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A, B);
 	    return out;
 	}
+
+	@Override
+	OperationNode simplify() {
+		// (a + a) / 2 is exactly a
+		if(_children[0] == _children[1])
+			return _children[0];
+		return this;
+	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int a = _children[0].emit(b);
+		int c = _children[1].emit(b);
+		return b.emit(Program.OP_ADD, a, c);
+	}
 }
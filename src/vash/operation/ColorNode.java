@@ -19,6 +19,9 @@
 package vash.operation;
 
 import vash.ImageParameters;
+import vash.PixelBuffer;
+import vash.PixelFormat;
+import vash.Plane;
 
 /**
  * A top-level nodes in the computation tree.  Where most nodes deal 
@@ -28,6 +31,74 @@ import vash.ImageParameters;
  * instead of a Plane.
  */
 abstract public class ColorNode extends OperationNode {
+	// the Shared nodes in our tree, innermost first
+	private volatile Shared[] _shared = null;
+	
 	protected ColorNode() {super(0, 3);}
 	abstract public byte[] compute(ImageParameters ip, boolean this_method_is_different);
+
+	/**
+	 * We write pixels, rather than a plane.
+	 */
+	@Override
+	int getResultPlaneCount() {
+		return 0;
+	}
+	
+	/**
+	 * The plane of each shared subtree is held for the whole computation, 
+	 * so we count one more plane for each of them.
+	 */
+	@Override
+	public int getPlaneNeed() {
+		return super.getPlaneNeed() + _getShared().length;
+	}
+	
+	/*
+	 * The tree's structure does not change once it is being computed, so we
+	 * only look for its Shared nodes once.
+	 */
+	private Shared[] _getShared() {
+		Shared[] shared = _shared;
+		if(shared == null) {
+			shared = Shared.find(this);
+			_shared = shared;
+		}
+		return shared;
+	}
+	
+	/**
+	 * Compute the planes of our children, as computeChildren does, after 
+	 * computing the planes of any subtrees that are shared between several
+	 * parents for this computation.  Color nodes must use this in place of 
+	 * computeChildren.
+	 * @param ip
+	 * @return one plane for each child; each must be returned with putPlane
+	 */
+	protected Plane[] computeChannels(ImageParameters ip) {
+		Shared.Planes prior = Shared.getPlanes();
+		try {
+			Shared.begin(_getShared(), ip);
+			return computeChildren(ip);
+		} finally {
+			Shared.setPlanes(prior);
+		}
+	}
+
+	/**
+	 * Compute the pixels covered by ip and store them into pix.  The pixel 
+	 * buffer holds the full image, even if ip is only a tile of that image, 
+	 * so that the image can be computed one tile at a time.
+	 * @param ip
+	 * @param pix a buffer of ip.getImageW() * ip.getImageH() * 3 bytes
+	 */
+	public void compute(ImageParameters ip, byte[] pix) {
+		compute(ip, new PixelBuffer(pix, 0, ip.getImageW() * 3, PixelFormat.BGR));
+	}
+
+	/**
+	 * Compute the pixels covered by ip and store them into out, which holds
+	 * the full image, as above.
+	 */
+	abstract public void compute(ImageParameters ip, PixelBuffer out);
 }
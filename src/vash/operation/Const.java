@@ -18,6 +18,8 @@
  */
 package vash.operation;
 
+import java.util.Arrays;
+
 import vash.ImageParameters;
 import vash.Plane;
 import vash.Seed;
@@ -59,15 +61,14 @@ public class Const extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		int w = ip.getW();
-		int h = ip.getH();
 		float v = (float)this.v.getV();
 		Plane p = ip.getPlane();
-		for(int y = 0; y < h; y++) {
-			for(int x = 0; x < w; x++) {
-				p.data[x][y] = v;
-			}
-		}
+		Arrays.fill(p.data, 0, ip.getW() * ip.getH(), v);
 		return p;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		return b.emit(Program.OP_CONST, -1, -1, (float)this.v.getV());
+	}
 }
@@ -33,19 +33,19 @@ public class Divide extends BinaryOperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		Plane A = _children[0].compute(ip);
-		Plane B = _children[1].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				if(B.data[i][j] == 0.0f)
-					out.data[i][j] = 1.0f;
-				else
-					out.data[i][j] = OperationNode.clampf(A.data[i][j] / B.data[i][j], -1.0f, 1.0f);
-			}
-	    }
-	    ip.putPlane(A);
-	    ip.putPlane(B);
+		Plane[] in = computeChildren(ip);
+		Plane A = in[0];
+		Plane B = in[1];
+		Plane out = ip.getResultPlane(A, B);
+		Kernels.get().divide(out.data, A.data, B.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A, B);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int a = _children[0].emit(b);
+		int c = _children[1].emit(b);
+		return b.emit(Program.OP_DIVIDE, a, c);
+	}
 }
@@ -64,9 +64,6 @@ public class Ellipse extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float pX, pY, dist;
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
 		float x0 = (float)this.f0.getX();
 		float y0 = (float)this.f0.getY();
 		float x1 = (float)this.f1.getX();
@@ -75,28 +72,23 @@ public class Ellipse extends OperationNode {
 		float szFraction = (float)this.size.getV();
 		float sz = minDist + szFraction * minDist;
 		
-		float fringe = X[2] - X[0];
+		float fringe = ip.getFringe();
 		
 		Plane out = ip.getPlane();
-		for(int j = 0; j < ip.getH(); j++) {
-			pY = Y[j];
-			for(int i = 0; i < ip.getW(); i++) {
-				pX = X[i];
-				
-				dist = distance(pX, pY, x0, y0) + distance(pX, pY, x1, y1);
-				
-				if(dist < sz) {
-					out.data[i][j] = 1.0f;
-				} else {
-					if(dist < sz + fringe) {
-						out.data[i][j] = 1.0f - (dist - sz) / fringe * 2.0f; 
-					} else {
-						out.data[i][j] = -1.0f;
-					}
-				}
-			}
-		}
-
+		Kernels.get().ellipse(out.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x0, y0, x1, y1, sz, fringe);
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x0 = (float)this.f0.getX();
+		float y0 = (float)this.f0.getY();
+		float x1 = (float)this.f1.getX();
+		float y1 = (float)this.f1.getY();
+		float minDist = distance(x0, y0, x1, y1);
+		float szFraction = (float)this.size.getV();
+		float sz = minDist + szFraction * minDist;
+		return b.emit(Program.OP_ELLIPSE, -1, -1, x0, y0, x1, y1, sz);
+	}
 }
@@ -33,26 +33,19 @@ public class Exponentiate extends BinaryOperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float twoOverPi = (float)(2.0 / Math.PI);
-		Plane A = _children[0].compute(ip);
-		Plane B = _children[1].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				float v0 = A.data[i][j];
-				float val;
-				if(v0 == 0.0f)
-					val = 0.0f;
-				else if(v0 < 0.0f)
-					val = (float)(-Math.pow(-v0, B.data[i][j]));
-				else
-					val = (float)Math.pow(v0, B.data[i][j]);
-				val *= twoOverPi;
-				out.data[i][j] = OperationNode.clampf(val, -1.0f, 1.0f);
-			}
-	    }
-	    ip.putPlane(A);
-	    ip.putPlane(B);
+		Plane[] in = computeChildren(ip);
+		Plane A = in[0];
+		Plane B = in[1];
+		Plane out = ip.getResultPlane(A, B);
+		Kernels.get().exponentiate(out.data, A.data, B.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A, B);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int a = _children[0].emit(b);
+		int c = _children[1].emit(b);
+		return b.emit(Program.OP_EXPONENTIATE, a, c);
+	}
 }
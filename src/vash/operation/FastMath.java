@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+
+/**
+ * Fast approximations of the transcendental functions the nodes spend most
+ * of their time in.  These are only used when computing images at 
+ * Quality.PREVIEW; canonical images always use java.lang.Math, so that they 
+ * are identical everywhere.  The maximum errors below were measured against
+ * java.lang.Math over the ranges the nodes use.
+ * 
+ * There is no pow here: HotSpot's intrinsic for Math.pow is faster than the 
+ * approximations we tried, so even previews use it.  Likewise, Math.sqrt is 
+ * a single instruction.
+ */
+final class FastMath {
+	private static final double PI = Math.PI;
+	private static final double HALF_PI = Math.PI / 2.0;
+	private static final double INV_PI = 1.0 / Math.PI;
+	
+	private FastMath() {}
+	
+	/**
+	 * The sine of x, by reduction to [-PI/2, PI/2] and an odd polynomial of
+	 * degree 11.  The absolute error is at most 1e-7 for |x| < 2 PI.
+	 */
+	static double sin(double x) {
+		double k = Math.rint(x * INV_PI);
+		double r = x - k * PI;
+		double r2 = r * r;
+		double s = r * (1.0 + r2 * (-1.0 / 6.0 + r2 * (1.0 / 120.0 + r2 * (-1.0 / 5040.0 
+				+ r2 * (1.0 / 362880.0 + r2 * (-1.0 / 39916800.0))))));
+		return (((long)k & 1) == 0) ? s : -s;
+	}
+	
+	/**
+	 * The angle of the point (x, y), as Math.atan2, by reduction to the 
+	 * first octant and a polynomial of degree 11.  The absolute error is at
+	 * most 2e-6 radians.
+	 */
+	static double atan2(double y, double x) {
+		double ax = Math.abs(x);
+		double ay = Math.abs(y);
+		double hi = Math.max(ax, ay);
+		if(hi == 0.0) {
+			return Math.atan2(y, x);
+		}
+		double z = Math.min(ax, ay) / hi;
+		double z2 = z * z;
+		double r = z * (0.99997726 + z2 * (-0.33262347 + z2 * (0.19354346 
+				+ z2 * (-0.11643287 + z2 * (0.05265332 + z2 * -0.01172120)))));
+		if(ay > ax) r = HALF_PI - r;
+		if(x < 0.0) r = PI - r;
+		return (y < 0.0) ? -r : r;
+	}
+}
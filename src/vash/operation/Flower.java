@@ -20,6 +20,7 @@ package vash.operation;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.Seed;
 import vash.value.Bounded;
 import vash.value.Position;
@@ -65,11 +66,20 @@ public class Flower extends OperationNode {
 		return new Flower(center.clone(), angle.clone(), size.clone(), ratio.clone(), n_points);
 	}
 
+	@Override
+	public int structuralHash() {
+		return super.structuralHash() * 31 + this.n_points;
+	}
+
+	@Override
+	public boolean structurallyEquals(OperationNode other) {
+		return super.structurallyEquals(other) && ((Flower)other).n_points == this.n_points;
+	}
+
 	@Override
 	public Plane compute(ImageParameters ip) {
+		boolean preview = ip.getQuality() == Quality.PREVIEW;
 		Plane out = ip.getPlane();
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
 		float x = (float)this.center.getX();
 		float y = (float)this.center.getY();
 		float angle = (float)this.angle.getV();
@@ -78,53 +88,28 @@ public class Flower extends OperationNode {
 		float inner = sz * ratio;
 		
 		// provide manual anti-aliasing
-		float fringe = X[2] - X[0];
+		float fringe = ip.getFringe();
 
         // note: adjust the angle by -PI/2 so 0 is up
         float ca = (float)Math.cos((angle * Math.PI / 180.0) - (Math.PI / 2.0));
         float sa = (float)Math.sin((angle * Math.PI / 180.0) - (Math.PI / 2.0));
 
-		for(int j = 0; j < ip.getH(); j++) {
-			float y0 = Y[j] - y;
-			for(int i = 0; i < ip.getW(); i++) {
-				float x0 = X[i] - x;
-				
-				// distance from center
-				float d = (float)Math.sqrt(x0 * x0 + y0 * y0);
-				
-				// rotate into angle
-				float x1 = (x0 * ca) - (y0 * sa);
-				float y1 = (x0 * sa) + (y0 * ca);
-				
-				if(d < sz * ratio) { // inside
-					out.data[i][j] = 1.0f;
-				} else if(d > sz) { // outsize
-					out.data[i][j] = -1.0f;
-				} else {
-					// is the point in an arm?
-					// the spiky bits are 0 + (n / n_points)
-					float theta = (float)((Math.atan2(y1, x1) / Math.PI + 1.0) / 2.0); // [0,1] on full circle
-					float expanded = theta * n_points; // [0,n] on full circle
-					float offset = expanded - (int)expanded; // [0,1] on each segment
-					offset = offset * 2.0f - 1.0f; // [-1,1] centered on segment
-					// the ratio from inner to outer, inverted
-					float r = ((d - inner) * (1.0f / (sz - inner)));
-
-					// inside/outside test is now simply a compare
-					float dist = r - Math.abs(offset);
-					if(dist < 0) {
-						out.data[i][j] = 1.0f;
-					} else {
-						if(dist < fringe) {
-							out.data[i][j] = 1.0f - (2.0f * dist / fringe);
-						} else {
-							out.data[i][j] = -1.0f;
-						}
-					}
-				}
-			}
-		}
+		Kernels.get().flower(out.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x, y, sz, ratio, inner, ca, sa, n_points, fringe, preview);
 
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x = (float)this.center.getX();
+		float y = (float)this.center.getY();
+		float angle = (float)this.angle.getV();
+		float sz = (float)this.size.getV();
+		float ratio = (float)this.ratio.getV();
+		float inner = sz * ratio;
+		float ca = (float)Math.cos((angle * Math.PI / 180.0) - (Math.PI / 2.0));
+		float sa = (float)Math.sin((angle * Math.PI / 180.0) - (Math.PI / 2.0));
+		return b.emit(Program.OP_FLOWER, -1, -1, x, y, sz, ratio, inner, ca, sa, n_points);
+	}
 }
@@ -0,0 +1,694 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import vash.ImageParameters;
+import vash.PixelBuffer;
+
+
+/**
+ * A Program, compiled into a class of its own.  Where the interpreter computes
+ * each instruction over a band of pixels, a fused kernel computes every 
+ * instruction for one pixel before moving on to the next, so that the values
+ * stay in locals and no intermediate planes are needed at all.
+ * 
+ * We write the class file ourselves and define it as a hidden class; no 
+ * compiler is needed.  The generated code is a straight line of calls to the
+ * static helpers below, one per instruction, so it needs no stack map frames.
+ * It is split into methods of CHUNK_SIZE instructions each, which keeps every
+ * method well under the limits on java methods and on the size of methods
+ * that HotSpot will compile, however large the tree.  Values that are used 
+ * after the end of their chunk are passed on through an array.
+ * 
+ * The program's constants are passed to the kernel rather than written into
+ * the class, and values are numbered by the instruction that computes them, 
+ * rather than by register, so every program with the same shape shares a 
+ * single class.  Only the most recently used shapes are kept, so a process 
+ * that sees many trees does not hold on to every class it has ever defined.
+ * If a class cannot be generated or defined for a program, create returns 
+ * null, and only that program is interpreted.
+ */
+abstract class FusedKernel {
+	private static final String CLASS_NAME = "vash/operation/GeneratedKernel";
+	private static final String SUPER_NAME = "vash/operation/FusedKernel";
+	
+	// the number of instructions in each generated method
+	private static final int CHUNK_SIZE = 32;
+	
+	// the most kernel classes we hold on to
+	private static final int CACHE_SIZE = 256;
+	
+	// marks, in the cache, a program that we could not generate a class for
+	private static final Class<?> FAILED = Void.class;
+	
+	// generated kernel classes, keyed by the program's shape, in order of 
+	// last use
+	private static final Map<String, Class<?>> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+	
+	private static final float TWO_OVER_PI = (float)(2.0 / Math.PI);
+	private static final float TWO_OVER_SQRT_TWO = (float)(2.0 / Math.sqrt(2.0));
+
+	private final float[] consts;
+	private final int[] output;
+	private final int values;
+	
+	
+	FusedKernel(float[] consts, int[] output, int values) {
+		this.consts = consts;
+		this.output = output;
+		this.values = values;
+	}
+	
+	/**
+	 * Compute every instruction for the pixel at gx, gy, storing at least the
+	 * values that are read after their chunk, and the outputs, into vals.  
+	 * The mirrored coordinates, mx and my, are only read by mirrored linear
+	 * gradients.
+	 */
+	abstract void pixel(float gx, float gy, float mx, float my, float fringe, float[] c, float[] vals);
+	
+	/**
+	 * Compute the pixels covered by ip and store them into out, exactly as 
+	 * Program.run does.
+	 */
+	final void run(ImageParameters ip, PixelBuffer out) {
+		float[] X = ip.getXValues();
+		float[] Y = ip.getYValues();
+		float[] MX = ip.getMirroredXValues();
+		float[] MY = ip.getMirroredYValues();
+		int w = ip.getW();
+		int h = ip.getH();
+		int ih = ip.getImageH();
+		int ox = ip.getOffsetX();
+		int oy = ip.getOffsetY();
+		int step = ip.getStep();
+		float fringe = ip.getFringe();
+		float[] vals = new float[this.values];
+		
+		// each row is computed into R, G and B, then stored through the buffer
+		float[] R = new float[w];
+		float[] G = new float[w];
+		float[] B = new float[w];
+		for(int j = 0; j < h; j++) {
+			float gy = Y[j];
+			// see LinearGradient.compute for the mirroring
+			float mx = MX[oy + j * step];
+			for(int i = 0; i < w; i++) {
+				pixel(X[i], gy, mx, MY[ox + i * step], fringe, this.consts, vals);
+				R[i] = vals[this.output[0]];
+				G[i] = vals[this.output[1]];
+				B[i] = vals[this.output[2]];
+			}
+			out.putRow(ih - 1 - (oy + j * step), ox, step, R, G, B, 0, w);
+		}
+	}
+
+	
+	/**
+	 * Return a kernel for the given program, or null if we cannot generate
+	 * one for it.
+	 */
+	static FusedKernel create(int[] code, float[] consts, int[] output) {
+		// number every value by the instruction that computes it
+		int n = code.length / Program.INSN_SIZE;
+		int[] shape = new int[n * 4 + 3];
+		int[] def = new int[n + 1];
+		for(int k = 0; k < n; k++) {
+			int pc = k * Program.INSN_SIZE;
+			shape[k * 4] = code[pc];
+			shape[k * 4 + 1] = (code[pc + 2] >= 0) ? def[code[pc + 2]] : -1;
+			shape[k * 4 + 2] = (code[pc + 3] >= 0) ? def[code[pc + 3]] : -1;
+			shape[k * 4 + 3] = code[pc + 4];
+			if(code[pc + 1] >= def.length) {
+				def = Arrays.copyOf(def, code[pc + 1] + 1);
+			}
+			def[code[pc + 1]] = k;
+		}
+		int[] values = new int[3];
+		for(int i = 0; i < 3; i++) {
+			values[i] = def[output[i]];
+			shape[n * 4 + i] = values[i];
+		}
+		
+		String key = Arrays.toString(shape);
+		Class<?> cls = cache.get(key);
+		if(cls == null) {
+			cls = _define(_generate(shape, n));
+			Class<?> prior = cache.putIfAbsent(key, cls);
+			if(prior != null) {
+				cls = prior;
+			}
+		}
+		if(cls == FAILED) {
+			return null;
+		}
+		try {
+			return (FusedKernel)cls.getDeclaredConstructor(float[].class, int[].class, int.class)
+					.newInstance(consts, values, n);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	
+	/*
+	 * Define a generated kernel as a hidden class, which can be unloaded once
+	 * it drops out of the cache and its last kernel is gone.  Returns FAILED
+	 * if there is no class to define, or it cannot be defined.
+	 */
+	private static Class<?> _define(byte[] bytes) {
+		if(bytes == null) {
+			return FAILED;
+		}
+		try {
+			return MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+		} catch(IllegalAccessException | LinkageError e) {
+			return FAILED;
+		}
+	}
+	
+	
+	/*
+	 * The arguments of an instruction's helper: its inputs, the coordinates
+	 * of the pixel, and its constants, in order.
+	 */
+	private static final int ARG_A = -1;
+	private static final int ARG_B = -2;
+	private static final int ARG_X = -3;
+	private static final int ARG_Y = -4;
+	private static final int ARG_MX = -5;
+	private static final int ARG_MY = -6;
+	private static final int ARG_FRINGE = -7;
+	
+	private static int[] _args(int op) {
+		switch(op) {
+		case Program.OP_ABSOLUTE:			return new int[] {ARG_A};
+		case Program.OP_INVERT:				return new int[] {ARG_A};
+		case Program.OP_ADD:				return new int[] {ARG_A, ARG_B};
+		case Program.OP_DIVIDE:				return new int[] {ARG_A, ARG_B};
+		case Program.OP_EXPONENTIATE:		return new int[] {ARG_A, ARG_B};
+		case Program.OP_MODULUS:			return new int[] {ARG_A, ARG_B};
+		case Program.OP_MULTIPLY:			return new int[] {ARG_A, ARG_B};
+		case Program.OP_SINC:				return new int[] {ARG_A, 0, 1};
+		case Program.OP_SINE:				return new int[] {ARG_A, 0, 1};
+		case Program.OP_SPIRAL:				return new int[] {ARG_A, ARG_X, ARG_Y, 0, 1, 2, 3};
+		case Program.OP_SQUIRCLE:			return new int[] {ARG_A, ARG_B, ARG_X, ARG_Y, 0, 1, 2, 3};
+		case Program.OP_ELLIPSE:			return new int[] {ARG_X, ARG_Y, ARG_FRINGE, 0, 1, 2, 3, 4};
+		case Program.OP_FLOWER:				return new int[] {ARG_X, ARG_Y, ARG_FRINGE, 0, 1, 2, 3, 4, 5, 6, 7};
+		case Program.OP_GRADIENT_LINEAR:	return new int[] {ARG_X, ARG_Y, ARG_MX, ARG_MY, 0, 1, 2, 3, 4, 5, 6, 7};
+		case Program.OP_GRADIENT_LINEAR1:	return new int[] {ARG_X, ARG_Y, 0, 1, 2, 3, 4};
+		case Program.OP_GRADIENT_RADIAL:	return new int[] {ARG_X, ARG_Y, 0, 1, 2, 3, 4, 5};
+		case Program.OP_POLAR_THETA:		return new int[] {ARG_X, ARG_Y, 0, 1, 2, 3};
+		default:
+			throw new IllegalStateException("Unknown opcode: " + op);
+		}
+	}
+	
+	private static String _helper(int op) {
+		switch(op) {
+		case Program.OP_ABSOLUTE:			return "absolute";
+		case Program.OP_INVERT:				return "invert";
+		case Program.OP_ADD:				return "add";
+		case Program.OP_DIVIDE:				return "divide";
+		case Program.OP_EXPONENTIATE:		return "exponentiate";
+		case Program.OP_MODULUS:			return "modulus";
+		case Program.OP_MULTIPLY:			return "multiply";
+		case Program.OP_SINC:				return "sinc";
+		case Program.OP_SINE:				return "sine";
+		case Program.OP_SPIRAL:				return "spiral";
+		case Program.OP_SQUIRCLE:			return "squircle";
+		case Program.OP_ELLIPSE:			return "ellipse";
+		case Program.OP_FLOWER:				return "flower";
+		case Program.OP_GRADIENT_LINEAR:	return "linearGradient";
+		case Program.OP_GRADIENT_LINEAR1:	return "linearGradient1";
+		case Program.OP_GRADIENT_RADIAL:	return "radialGradient";
+		case Program.OP_POLAR_THETA:		return "polarTheta";
+		default:
+			throw new IllegalStateException("Unknown opcode: " + op);
+		}
+	}
+	
+	
+	/*
+	 * Build the class file for a kernel of the given shape, or return null if
+	 * the program is too large for one.
+	 */
+	private static byte[] _generate(int[] shape, int n) {
+		// the last instruction to read each value; outputs are read at the end
+		int[] lastUse = new int[n];
+		Arrays.fill(lastUse, -1);
+		for(int k = 0; k < n; k++) {
+			if(shape[k * 4 + 1] >= 0) lastUse[shape[k * 4 + 1]] = k;
+			if(shape[k * 4 + 2] >= 0) lastUse[shape[k * 4 + 2]] = k;
+		}
+		for(int i = 0; i < 3; i++) {
+			lastUse[shape[n * 4 + i]] = n;
+		}
+		
+		Assembler asm = new Assembler();
+		int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		String chunkDesc = "(FFFFF[F[F)V";
+		
+		// GeneratedKernel(float[] consts, int[] output, int values) { super(consts, output, values); }
+		Assembler.Code init = asm.new Code(4, 4);
+		init.op(0x2a);				// aload_0
+		init.op(0x2b);				// aload_1
+		init.op(0x2c);				// aload_2
+		init.op(0x1d);				// iload_3
+		init.ref(0xb7, asm.method(SUPER_NAME, "<init>", "([F[II)V"));		// invokespecial
+		init.op(0xb1);				// return
+		asm.addMethod(0x0000, "<init>", "([F[II)V", init);
+		
+		// void pixel(float gx, float gy, float mx, float my, float fringe, float[] c, float[] vals)
+		Assembler.Code pixel = asm.new Code(7, 8);
+		for(int i = 0; i < chunks; i++) {
+			for(int slot = 1; slot <= 5; slot++) {
+				pixel.op(0x17, slot);		// fload
+			}
+			pixel.op(0x19, 6);				// aload
+			pixel.op(0x19, 7);				// aload
+			pixel.ref(0xb8, asm.method(CLASS_NAME, "chunk" + i, chunkDesc));	// invokestatic
+		}
+		pixel.op(0xb1);						// return
+		asm.addMethod(0x0000, "pixel", "(FFFFF[F[F)V", pixel);
+		
+		// static void chunkN(float gx, float gy, float mx, float my, float fringe, float[] c, float[] vals)
+		// computes each value into the local at 7 + (k - start)
+		for(int i = 0; i < chunks; i++) {
+			int start = i * CHUNK_SIZE;
+			int end = Math.min(n, start + CHUNK_SIZE);
+			Assembler.Code chunk = asm.new Code(14, 7 + CHUNK_SIZE);
+			for(int k = start; k < end; k++) {
+				int op = shape[k * 4];
+				int c = shape[k * 4 + 3];
+				if(op == Program.OP_CONST) {
+					chunk.loadConst(c);
+				} else {
+					int[] args = _args(op);
+					for(int arg : args) {
+						switch(arg) {
+						case ARG_A:			chunk.loadValue(shape[k * 4 + 1], start); break;
+						case ARG_B:			chunk.loadValue(shape[k * 4 + 2], start); break;
+						case ARG_X:			chunk.op(0x17, 0); break;		// fload
+						case ARG_Y:			chunk.op(0x17, 1); break;
+						case ARG_MX:		chunk.op(0x17, 2); break;
+						case ARG_MY:		chunk.op(0x17, 3); break;
+						case ARG_FRINGE:	chunk.op(0x17, 4); break;
+						default:			chunk.loadConst(c + arg); break;
+						}
+					}
+					char[] params = new char[args.length];
+					Arrays.fill(params, 'F');
+					chunk.ref(0xb8, asm.method(SUPER_NAME, _helper(op), "(" + new String(params) + ")F"));
+				}
+				chunk.op(0x38, 7 + k - start);		// fstore
+			}
+			// pass on the values that are read after this chunk
+			for(int k = start; k < end; k++) {
+				if(lastUse[k] >= end) {
+					chunk.op(0x19, 6);				// aload
+					chunk.pushInt(k);
+					chunk.op(0x17, 7 + k - start);	// fload
+					chunk.op(0x51);					// fastore
+				}
+			}
+			chunk.op(0xb1);							// return
+			asm.addMethod(0x000a, "chunk" + i, chunkDesc, chunk);
+		}
+		return asm.toByteArray();
+	}
+	
+	
+	/*
+	 * Just enough of a class file writer for the kernels: a constant pool, 
+	 * and methods without branches or exception handlers, with fewer than 256
+	 * locals.
+	 */
+	private static final class Assembler {
+		private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		private final HashMap<String, Integer> entries = new HashMap<String, Integer>();
+		private int poolSize = 1;
+		private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+		private int methodCount = 0;
+		private boolean overflow = false;
+		
+		/*
+		 * The code of a single method.
+		 */
+		final class Code {
+			private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			private final int maxStack;
+			private final int maxLocals;
+			
+			Code(int maxStack, int maxLocals) {
+				this.maxStack = maxStack;
+				this.maxLocals = maxLocals;
+			}
+			
+			void op(int opcode) {
+				bytes.write(opcode);
+			}
+			
+			/*
+			 * An instruction with a local variable index.
+			 */
+			void op(int opcode, int local) {
+				bytes.write(opcode);
+				bytes.write(local);
+			}
+			
+			/*
+			 * An instruction with a constant pool index.
+			 */
+			void ref(int opcode, int index) {
+				bytes.write(opcode);
+				_u2(bytes, index);
+			}
+			
+			void pushInt(int value) {
+				if(value <= 5) {
+					op(0x03 + value);			// iconst_<n>
+				} else if(value < 128) {
+					op(0x10, value);			// bipush
+				} else if(value < 32768) {
+					ref(0x11, value);			// sipush
+				} else {
+					ref(0x13, integer(value));	// ldc_w
+				}
+			}
+			
+			/*
+			 * Push c[offset].
+			 */
+			void loadConst(int offset) {
+				op(0x19, 5);			// aload
+				pushInt(offset);
+				op(0x30);				// faload
+			}
+			
+			/*
+			 * Push value k, from its local if it was computed in the chunk that
+			 * starts at start, or else from vals; -1 is an unused input, which
+			 * is zero.
+			 */
+			void loadValue(int k, int start) {
+				if(k < 0) {
+					op(0x0b);			// fconst_0
+				} else if(k >= start) {
+					op(0x17, 7 + k - start);	// fload
+				} else {
+					op(0x19, 6);		// aload
+					pushInt(k);
+					op(0x30);			// faload
+				}
+			}
+		}
+		
+		void addMethod(int access, String name, String descriptor, Code code) {
+			byte[] bytes = code.bytes.toByteArray();
+			if(bytes.length >= 65536) {
+				overflow = true;
+				return;
+			}
+			_u2(methods, access);
+			_u2(methods, utf8(name));
+			_u2(methods, utf8(descriptor));
+			_u2(methods, 1);
+			_u2(methods, utf8("Code"));
+			_u4(methods, 12 + bytes.length);
+			_u2(methods, code.maxStack);
+			_u2(methods, code.maxLocals);
+			_u4(methods, bytes.length);
+			methods.write(bytes, 0, bytes.length);
+			_u2(methods, 0);		// exception table
+			_u2(methods, 0);		// attributes
+			methodCount++;
+		}
+		
+		// Note: every name we write is ascii, so modified utf-8 is just ascii
+		int utf8(String value) {
+			Integer index = entries.get("U" + value);
+			if(index == null) {
+				byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+				index = _add("U" + value, 1);
+				_u2(pool, bytes.length);
+				pool.write(bytes, 0, bytes.length);
+			}
+			return index;
+		}
+		
+		int integer(int value) {
+			Integer index = entries.get("I" + value);
+			if(index == null) {
+				index = _add("I" + value, 3);
+				_u4(pool, value);
+			}
+			return index;
+		}
+		
+		int type(String name) {
+			Integer index = entries.get("C" + name);
+			if(index == null) {
+				int nameIndex = utf8(name);
+				index = _add("C" + name, 7);
+				_u2(pool, nameIndex);
+			}
+			return index;
+		}
+		
+		int method(String owner, String name, String descriptor) {
+			Integer index = entries.get("M" + owner + "." + name + descriptor);
+			if(index == null) {
+				int ownerIndex = type(owner);
+				int nameIndex = utf8(name);
+				int descIndex = utf8(descriptor);
+				int natIndex = _add("N" + name + descriptor, 12);
+				_u2(pool, nameIndex);
+				_u2(pool, descIndex);
+				index = _add("M" + owner + "." + name + descriptor, 10);
+				_u2(pool, ownerIndex);
+				_u2(pool, natIndex);
+			}
+			return index;
+		}
+		
+		/*
+		 * Returns the class file, or null if anything in it is too large.
+		 */
+		byte[] toByteArray() {
+			int thisClass = type(CLASS_NAME);
+			int superClass = type(SUPER_NAME);
+			if(overflow || poolSize >= 65536) {
+				return null;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			_u4(out, 0xcafebabe);
+			// java 8, so that code without branches needs no stack map frames
+			_u2(out, 0);
+			_u2(out, 52);
+			_u2(out, poolSize);
+			byte[] poolBytes = pool.toByteArray();
+			out.write(poolBytes, 0, poolBytes.length);
+			_u2(out, 0x0030);		// final, super
+			_u2(out, thisClass);
+			_u2(out, superClass);
+			_u2(out, 0);			// interfaces
+			_u2(out, 0);			// fields
+			_u2(out, methodCount);
+			byte[] methodBytes = methods.toByteArray();
+			out.write(methodBytes, 0, methodBytes.length);
+			_u2(out, 0);			// attributes
+			return out.toByteArray();
+		}
+		
+		private int _add(String key, int tag) {
+			int index = poolSize++;
+			entries.put(key, index);
+			pool.write(tag);
+			return index;
+		}
+		
+		private static void _u2(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 8);
+			out.write(value);
+		}
+		
+		private static void _u4(ByteArrayOutputStream out, int value) {
+			_u2(out, value >>> 16);
+			_u2(out, value);
+		}
+	}
+	
+	
+	/*
+	 * The helpers that generated code calls, one per opcode.  Each must do 
+	 * exactly the same float math as the interpreter's kernels.  They are 
+	 * small enough for HotSpot to inline into the generated methods.
+	 */
+	static float absolute(float a) {
+		return Math.abs(a);
+	}
+	
+	static float invert(float a) {
+		return -a;
+	}
+	
+	static float add(float a, float b) {
+		return (a + b) / 2.0f;
+	}
+	
+	static float multiply(float a, float b) {
+		return a * b;
+	}
+	
+	static float divide(float a, float b) {
+		return (b == 0.0f) ? 1.0f : OperationNode.clampf(a / b, -1.0f, 1.0f);
+	}
+	
+	static float exponentiate(float a, float b) {
+		float val;
+		if(a == 0.0f) val = 0.0f;
+		else if(a < 0.0f) val = (float)(-Math.pow(-a, b));
+		else val = (float)Math.pow(a, b);
+		val *= TWO_OVER_PI;
+		return OperationNode.clampf(val, -1.0f, 1.0f);
+	}
+	
+	static float modulus(float a, float b) {
+		if(b == 0.0f) return (a > 0.0f) ? 1.0f : ((a < 0.0f) ? -1.0f : 0.0f);
+		return a % b;
+	}
+	
+	static float sinc(float a, float freq, float phase) {
+		float denom = a * freq + phase;
+		return (denom == 0.0f) ? 1.0f : OperationNode.clampf((float)(Math.sin(denom) / denom), -1.0f, 1.0f);
+	}
+	
+	static float sine(float a, float freq, float phase) {
+		return (float)Math.sin(a * freq + phase);
+	}
+	
+	static float spiral(float a, float gx, float gy, float c0, float c1, float c2, float c3) {
+		float x0 = gx - c0;
+		float y0 = gy - c1;
+		float r = (((x0 * x0) + (y0 * y0)) * TWO_OVER_SQRT_TWO) - 1.0f;
+		float theta = (float)(Math.atan2(y0, x0) / Math.PI);
+		float tmp = a - r + (c3 * (float)Math.pow(theta, c2));
+		while(tmp > 1.0f) tmp -= 1.0f;
+		while(tmp < -1.0f) tmp += 1.0f;
+		tmp = (float)Math.abs(Math.abs(tmp) - 0.5);
+		return 4.0f * tmp - 1.0f;
+	}
+	
+	static float squircle(float a, float b, float gx, float gy, float c0, float c1, float c2, float c3) {
+		float va = Math.abs((gx - c0) - a);
+		float vb = Math.abs((gy - c1) - b);
+		float numer = (float)-(Math.pow(va, c2) + Math.pow(vb, c2));
+		return (c3 == 0.0f) ? 1.0f : OperationNode.clampf(numer / c3, -1.0f, 1.0f);
+	}
+	
+	static float ellipse(float gx, float gy, float fringe, float c0, float c1, float c2, float c3, float c4) {
+		float dist = OperationNode.distance(gx, gy, c0, c1) + OperationNode.distance(gx, gy, c2, c3);
+		if(dist < c4) return 1.0f;
+		if(dist < c4 + fringe) return 1.0f - (dist - c4) / fringe * 2.0f;
+		return -1.0f;
+	}
+	
+	static float flower(float gx, float gy, float fringe, 
+			float c0, float c1, float c2, float c3, float c4, float c5, float c6, float c7) 
+	{
+		float x0 = gx - c0;
+		float y0 = gy - c1;
+		float dd = (float)Math.sqrt(x0 * x0 + y0 * y0);
+		float x1 = (x0 * c5) - (y0 * c6);
+		float y1 = (x0 * c6) + (y0 * c5);
+		if(dd < c2 * c3) return 1.0f;
+		if(dd > c2) return -1.0f;
+		float theta = (float)((Math.atan2(y1, x1) / Math.PI + 1.0) / 2.0);
+		float expanded = theta * c7;
+		float offset = expanded - (int)expanded;
+		offset = offset * 2.0f - 1.0f;
+		float r = ((dd - c4) * (1.0f / (c2 - c4)));
+		float dist = r - Math.abs(offset);
+		if(dist < 0) return 1.0f;
+		if(dist < fringe) return 1.0f - (2.0f * dist / fringe);
+		return -1.0f;
+	}
+	
+	static float linearGradient(float gx, float gy, float mx, float my, 
+			float c0, float c1, float c2, float c3, float c4, float c5, float c6, float c7) 
+	{
+		// see LinearGradient.compute for the mirroring
+		float a = (c7 == 0.0f) ? gx : mx;
+		float b = (c7 == 0.0f) ? gy : my;
+		float intX = (c4 * b + a - c4 * c5) / (c4 * c4 + 1);
+		float intY = (c4 * c4 * b + c4 * a + c5) / (c4 * c4 + 1);
+		float d0toInt = OperationNode.distance(c0, c1, intX, intY);
+		float d1toInt = OperationNode.distance(c2, c3, intX, intY);
+		float dd = d0toInt / c6;
+		if((d0toInt + d1toInt) > (c6 + 0.0001)) return (d1toInt > d0toInt) ? -1.0f : 1.0f;
+		return dd * 2.0f - 1.0f;
+	}
+	
+	static float linearGradient1(float gx, float gy, float c0, float c1, float c2, float c3, float c4) {
+		float pX = gx - c0;
+		float pY = gy - c1;
+		float ppY = pX * c3 + pY * c4;
+		float color = ppY / c2 + 1.0f;
+		color -= 0.5f;
+		color *= 2.0f;
+		return OperationNode.clampf(color, -1.0f, 1.0f);
+	}
+	
+	static float radialGradient(float gx, float gy, float c0, float c1, float c2, float c3, float c4, float c5) {
+		float x0 = gx - c0;
+		float y0 = gy - c1;
+		float x1 = (x0 * c4) - (y0 * c5);
+		float y1 = (x0 * c5) + (y0 * c4);
+		float x2 = x1 / c2;
+		float y2 = y1 / c3;
+		float tmp = -(float)Math.sqrt(x2 * x2 + y2 * y2) * TWO_OVER_SQRT_TWO + 1.0f;
+		return OperationNode.clampf(tmp, -1.0f, 1.0f);
+	}
+	
+	static float polarTheta(float gx, float gy, float c0, float c1, float c2, float c3) {
+		float x0 = gx - c0;
+		float y0 = gy - c1;
+		float x1 = (x0 * c2) - (y0 * c3);
+		float y1 = (x0 * c3) + (y0 * c2);
+		return (float)(Math.atan2(y1, x1) / Math.PI);
+	}
+}
@@ -34,14 +34,22 @@ public class Invert extends UnaryOperationNode {
 	@Override
 	public Plane compute(ImageParameters ip) {
 		Plane A = _children[0].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				out.data[i][j] = -A.data[i][j];
-			}
-	    }
-	    ip.putPlane(A);
+		Plane out = ip.getResultPlane(A);
+		Kernels.get().invert(out.data, A.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A);
 	    return out;
 	}
-}
 
+	@Override
+	OperationNode simplify() {
+		// -(-a) is exactly a
+		if(_children[0] instanceof Invert)
+			return _children[0].getChild(0);
+		return this;
+	}
+
+	@Override
+	int emit(Program.Builder b) {
+		return b.emit(Program.OP_INVERT, _children[0].emit(b), -1);
+	}
+}
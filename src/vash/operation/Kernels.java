@@ -0,0 +1,439 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * The inner loops of the nodes that are pure per-pixel float math, shared 
+ * by the nodes' compute methods and by Program.  The methods here are plain
+ * scalar java.  When the jdk.incubator.vector module is present, and the 
+ * VectorKernels class is available (it is built from a separate source tree
+ * into the versioned part of our multi-release jar), get returns a subclass
+ * that uses SIMD instructions instead.  The vector kernels must produce 
+ * exactly the same bits as these scalar kernels for every operation; this is
+ * checked by the tests, with mismatch, rather than on every start.
+ * 
+ * The geometric kernels compute rows [y0, y0 + rows) of a plane w pixels 
+ * wide, where X and Y are the coordinates of the columns and rows, into out,
+ * starting at out[0].
+ */
+class Kernels {
+	private static final Kernels instance = _select();
+	
+	/**
+	 * Return the best kernels available on this jvm.
+	 */
+	static Kernels get() {
+		return instance;
+	}
+	
+	/**
+	 * Returns true if get returns kernels that use SIMD instructions.
+	 */
+	static boolean isVectorized() {
+		return instance.getClass() != Kernels.class;
+	}
+	
+	private static Kernels _select() {
+		if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			return new Kernels();
+		}
+		try {
+			return (Kernels)Class.forName("vash.operation.VectorKernels").getDeclaredConstructor().newInstance();
+		} catch(ReflectiveOperationException e) {
+			// not built with the vector kernels
+		} catch(LinkageError e) {
+			// built with the vector kernels, but cannot link them here
+		}
+		return new Kernels();
+	}
+	
+	
+	void absolute(float[] out, float[] A, int n) {
+		for(int k = 0; k < n; k++) {
+			out[k] = Math.abs(A[k]);
+		}
+	}
+	
+	void invert(float[] out, float[] A, int n) {
+		for(int k = 0; k < n; k++) {
+			out[k] = -A[k];
+		}
+	}
+	
+	void add(float[] out, float[] A, float[] B, int n) {
+		for(int k = 0; k < n; k++) {
+			out[k] = (A[k] + B[k]) / 2.0f;
+		}
+	}
+
+	void divide(float[] out, float[] A, float[] B, int n) {
+		for(int k = 0; k < n; k++) {
+			if(B[k] == 0.0f)
+				out[k] = 1.0f;
+			else
+				out[k] = OperationNode.clampf(A[k] / B[k], -1.0f, 1.0f);
+		}
+	}
+	
+	void modulus(float[] out, float[] A, float[] B, int n) {
+		for(int k = 0; k < n; k++) {
+			if(B[k] == 0.0f) {
+				if(A[k] > 0.0f)			out[k] = 1.0f;
+				else if(A[k] < 0.0f)	out[k] = -1.0f;
+				else					out[k] = 0.0f;
+			} else {
+				// Note: this is a separate function; fmod is simply % in 
+				//		java.  Experiment with and consider rolling a new 
+				//		op with IEEEremainder, if it looks good.
+				out[k] = A[k] % B[k];
+			}
+		}
+	}
+	
+	void multiply(float[] out, float[] A, float[] B, int n) {
+		for(int k = 0; k < n; k++) {
+			out[k] = A[k] * B[k];
+		}
+	}
+	
+	void ellipse(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float fx0, float fy0, float fx1, float fy1, float sz, float fringe) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			float pY = Y[y0 + j];
+			for(int i = 0; i < w; i++, k++) {
+				float pX = X[i];
+				float dist = OperationNode.distance(pX, pY, fx0, fy0) + OperationNode.distance(pX, pY, fx1, fy1);
+				if(dist < sz) {
+					out[k] = 1.0f;
+				} else {
+					if(dist < sz + fringe) {
+						out[k] = 1.0f - (dist - sz) / fringe * 2.0f; 
+					} else {
+						out[k] = -1.0f;
+					}
+				}
+			}
+		}
+	}
+	
+	void linearGradient1(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float px0, float py0, float len, float sa, float ca) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			float pY = Y[y0 + j] - py0;
+			for(int i = 0; i < w; i++, k++) {
+				float pX = X[i] - px0;
+				// rotate by ang; we don't need the x component
+				float ppY = pX * sa + pY * ca;
+				// lightness is distance along p1->p0, but centered at p0
+				float color = ppY / len + 1.0f;
+				// scale into [-1,1] and clamp
+				color -= 0.5f;
+				color *= 2.0f;
+				out[k] = OperationNode.clampf(color, -1.0f, 1.0f);
+			}
+		}
+	}
+	
+	void radialGradient(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float x, float y, float sw, float sh, float ca, float sa) {
+		float twoOverSqrtTwo = (float)(2.0 / Math.sqrt(2.0));
+		for(int j = 0, k = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			for(int i = 0; i < w; i++, k++) {
+				float px = X[i] - x;
+				// rotate
+				float x1 = (px * ca) - (py * sa);
+				float y1 = (px * sa) + (py * ca);
+				// squeeze by proportion
+				float x2 = x1 / sw;
+				float y2 = y1 / sh;
+				// intensity in proportion to distance
+				float tmp = -(float)Math.sqrt(x2 * x2 + y2 * y2) * twoOverSqrtTwo + 1.0f;
+				out[k] = OperationNode.clampf(tmp, -1.0f, 1.0f);
+			}
+		}
+	}
+	
+	void squircle(float[] out, float[] A, float[] B, float[] X, float[] Y, int y0, int w, int rows,
+			float x, float y, float n, float denom) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			for(int i = 0; i < w; i++, k++) {
+				float px = X[i] - x;
+				float a = Math.abs(px - A[k]);
+				float b = Math.abs(py - B[k]);
+				float numer = (float)-(Math.pow(a, n) + Math.pow(b, n));
+				if(denom == 0.0f)
+					out[k] = 1.0f;
+				else
+					out[k] = OperationNode.clampf(numer / denom, -1.0f, 1.0f);
+			}
+		}
+	}
+
+	
+	/*
+	 * The kernels below call into Math for each pixel, so there is nothing 
+	 * for SIMD instructions to gain, and VectorKernels leaves them alone.
+	 * Those that take preview use FastMath in its place, as the nodes do at
+	 * Quality.PREVIEW.
+	 */
+	
+	void exponentiate(float[] out, float[] A, float[] B, int n) {
+		float twoOverPi = (float)(2.0 / Math.PI);
+		for(int k = 0; k < n; k++) {
+			float v0 = A[k];
+			float val;
+			if(v0 == 0.0f)
+				val = 0.0f;
+			else if(v0 < 0.0f)
+				val = (float)(-Math.pow(-v0, B[k]));
+			else
+				val = (float)Math.pow(v0, B[k]);
+			val *= twoOverPi;
+			out[k] = OperationNode.clampf(val, -1.0f, 1.0f);
+		}
+	}
+	
+	void sinc(float[] out, float[] A, int n, float freq, float phase, boolean preview) {
+		for(int k = 0; k < n; k++) {
+			float denom = A[k] * freq + phase;
+			if(denom == 0.0f)
+				out[k] = 1.0f;
+			else
+				out[k] = OperationNode.clampf((float)((preview ? FastMath.sin(denom) : Math.sin(denom)) / denom), -1.0f, 1.0f);
+		}
+	}
+
+	void sine(float[] out, float[] A, int n, float freq, float phase, boolean preview) {
+		for(int k = 0; k < n; k++) {
+			out[k] = (float)(preview ? FastMath.sin(A[k] * freq + phase) : Math.sin(A[k] * freq + phase));
+		}
+	}
+	
+	void spiral(float[] out, float[] V, float[] X, float[] Y, int y0, int w, int rows, 
+			float x, float y, float n, float b, boolean preview) {
+		float twoOverSqrtTwo = (float)(2.0 / Math.sqrt(2.0));
+		for(int j = 0, k = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			for(int i = 0; i < w; i++, k++) {
+				float px = X[i] - x;
+				float r = (((px * px) + (py * py)) * twoOverSqrtTwo) - 1.0f;
+				float theta = (float)((preview ? FastMath.atan2(py, px) : Math.atan2(py, px)) / Math.PI);
+				float tmp = V[k] - r + (b * (float)Math.pow(theta, n));
+				
+				while(tmp > 1.0f) tmp -= 1.0f;
+				while(tmp < -1.0f) tmp += 1.0f;
+				tmp = (float)Math.abs(Math.abs(tmp) - 0.5);
+				
+				out[k] = 4.0f * tmp - 1.0f;
+			}
+		}
+	}
+	
+	void flower(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float x, float y, float sz, float ratio, float inner, float ca, float sa, float n_points, 
+			float fringe, boolean preview) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			for(int i = 0; i < w; i++, k++) {
+				float px = X[i] - x;
+				// distance from center
+				float d = (float)Math.sqrt(px * px + py * py);
+				// rotate into angle
+				float x1 = (px * ca) - (py * sa);
+				float y1 = (px * sa) + (py * ca);
+				if(d < sz * ratio) { // inside
+					out[k] = 1.0f;
+				} else if(d > sz) { // outside
+					out[k] = -1.0f;
+				} else {
+					// is the point in an arm?
+					// the spiky bits are 0 + (n / n_points)
+					float theta = (float)(((preview ? FastMath.atan2(y1, x1) : Math.atan2(y1, x1)) / Math.PI + 1.0) / 2.0); // [0,1] on full circle
+					float expanded = theta * n_points; // [0,n] on full circle
+					float offset = expanded - (int)expanded; // [0,1] on each segment
+					offset = offset * 2.0f - 1.0f; // [-1,1] centered on segment
+					// the ratio from inner to outer, inverted
+					float r = ((d - inner) * (1.0f / (sz - inner)));
+					// inside/outside test is now simply a compare
+					float dist = r - Math.abs(offset);
+					if(dist < 0) {
+						out[k] = 1.0f;
+					} else {
+						if(dist < fringe) {
+							out[k] = 1.0f - (2.0f * dist / fringe);
+						} else {
+							out[k] = -1.0f;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Unlike the other geometric kernels, X and Y here are the coordinates of
+	 * the full image, which we pick from at ox, oy and step.  If mirrored, 
+	 * they are the mirrored coordinates instead, and the row picks the X 
+	 * value and the column the Y value; see LinearGradient.compute.
+	 */
+	void linearGradient(float[] out, float[] X, float[] Y, int ox, int oy, int step, int y0, int w, int rows, 
+			float x0, float y0f, float x1, float y1, float m, float b, float d0to1, boolean mirrored) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			int row = oy + (y0 + j) * step;
+			for(int i = 0; i < w; i++, k++) {
+				int col = ox + i * step;
+				float pX, pY;
+				if(!mirrored) {
+					pX = X[col];
+					pY = Y[row];
+				} else {
+					pX = X[row];
+					pY = Y[col];
+				}
+				float intX = (m * pY + pX - m * b) / (m * m + 1);
+				float intY = (m * m * pY + m * pX + b) / (m * m + 1);
+				float d0toInt = OperationNode.distance(x0, y0f, intX, intY);
+				float d1toInt = OperationNode.distance(x1, y1, intX, intY);
+				float d = d0toInt / d0to1;
+				if((d0toInt + d1toInt) > (d0to1 + 0.0001)) {
+					if(d1toInt > d0toInt) {
+						out[k] = -1.0f;
+					} else {
+						out[k] = 1.0f;
+					}
+				} else {
+					out[k] = d * 2.0f - 1.0f;
+				}
+			}
+		}
+	}
+	
+	void polarTheta(float[] out, float[] X, float[] Y, int y0, int w, int rows, 
+			float x, float y, float ca, float sa, boolean preview) {
+		for(int j = 0, k = 0; j < rows; j++) {
+			float py = Y[y0 + j] - y;
+			for(int i = 0; i < w; i++, k++) {
+				float px = X[i] - x;
+				float x1 = (px * ca) - (py * sa);
+				float y1 = (px * sa) + (py * ca);
+				out[k] = (float)((preview ? FastMath.atan2(y1, x1) : Math.atan2(y1, x1)) / Math.PI);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Run every kernel in both expect and actual over the same inputs and 
+	 * return the name of the first kernel whose output differs, or null if
+	 * they all produce exactly the same bits (counting every NaN as the 
+	 * same).  The inputs cover the whole range of values the nodes see, the
+	 * special cases each kernel handles, values no node should ever see, 
+	 * such as infinities and NaN, and lengths on either side of every vector
+	 * size.  This is for the tests, which check the vector kernels with it.
+	 */
+	static String mismatch(Kernels expect, Kernels actual) {
+		final int w = 67;
+		final int rows = 5;
+		final int n = w * rows;
+		final float[] special = {0.0f, -0.0f, 1.0f, -1.0f, 0.5f, -0.5f, Float.MIN_VALUE, -Float.MIN_VALUE, 
+				Float.MIN_NORMAL / 2.0f, 1e-30f, -1e-30f, 1e30f, -1e30f, Float.MAX_VALUE, Math.nextUp(1.0f), 
+				Math.nextDown(-1.0f), Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN};
+		Random r = new Random(0);
+		float[] A = new float[n];
+		float[] B = new float[n];
+		// spiral wraps its input into range one step at a time, so it only
+		// gets values that a node could give it
+		float[] V = new float[n];
+		for(int k = 0; k < n; k++) {
+			A[k] = (k < special.length) ? special[k] : r.nextFloat() * 2.0f - 1.0f;
+			B[k] = (k % 7 == 0) ? special[(k / 7) % special.length] : r.nextFloat() * 2.0f - 1.0f;
+			V[k] = (k < 6) ? special[k] : r.nextFloat() * 2.0f - 1.0f;
+		}
+		float[] X = new float[w];
+		float[] Y = new float[rows + 3];
+		for(int i = 0; i < w; i++) X[i] = -1.0f + (2.0f / w) * (i + 0.5f);
+		for(int j = 0; j < Y.length; j++) Y[j] = 1.0f - (2.0f / Y.length) * (j + 0.5f);
+		
+		float[] e = new float[n];
+		float[] a = new float[n];
+		for(int len : new int[] {n, n - 1, 33, 32, 31, 17, 16, 15, 9, 8, 7, 5, 4, 3, 1, 0}) {
+			expect.absolute(e, A, len); actual.absolute(a, A, len);
+			if(!Arrays.equals(e, a)) return "absolute";
+			expect.invert(e, A, len); actual.invert(a, A, len);
+			if(!Arrays.equals(e, a)) return "invert";
+			expect.add(e, A, B, len); actual.add(a, A, B, len);
+			if(!Arrays.equals(e, a)) return "add";
+			expect.divide(e, A, B, len); actual.divide(a, A, B, len);
+			if(!Arrays.equals(e, a)) return "divide";
+			expect.modulus(e, A, B, len); actual.modulus(a, A, B, len);
+			if(!Arrays.equals(e, a)) return "modulus";
+			expect.multiply(e, A, B, len); actual.multiply(a, A, B, len);
+			if(!Arrays.equals(e, a)) return "multiply";
+			expect.exponentiate(e, A, B, len); actual.exponentiate(a, A, B, len);
+			if(!Arrays.equals(e, a)) return "exponentiate";
+			for(boolean preview : new boolean[] {false, true}) {
+				expect.sine(e, A, len, 1.5f, 0.25f, preview); actual.sine(a, A, len, 1.5f, 0.25f, preview);
+				if(!Arrays.equals(e, a)) return "sine";
+				expect.sinc(e, A, len, 1.5f, 0.0f, preview); actual.sinc(a, A, len, 1.5f, 0.0f, preview);
+				if(!Arrays.equals(e, a)) return "sinc";
+			}
+		}
+		for(int i = 0; i < 16; i++) {
+			float p0 = r.nextFloat() * 2.0f - 1.0f;
+			float p1 = r.nextFloat() * 2.0f - 1.0f;
+			float p2 = r.nextFloat() * 2.0f - 1.0f;
+			float p3 = r.nextFloat() * 2.0f - 1.0f;
+			float p4 = r.nextFloat() * 2.0f;
+			float p5 = (i == 0) ? 0.0f : r.nextFloat();
+			boolean preview = i % 2 == 1;
+			expect.ellipse(e, X, Y, 3, w, rows, p0, p1, p2, p3, p4, 2.0f / w);
+			actual.ellipse(a, X, Y, 3, w, rows, p0, p1, p2, p3, p4, 2.0f / w);
+			if(!Arrays.equals(e, a)) return "ellipse";
+			expect.linearGradient1(e, X, Y, 3, w, rows, p0, p1, p4, p2, p3);
+			actual.linearGradient1(a, X, Y, 3, w, rows, p0, p1, p4, p2, p3);
+			if(!Arrays.equals(e, a)) return "linearGradient1";
+			expect.radialGradient(e, X, Y, 3, w, rows, p0, p1, p4, p5, p2, p3);
+			actual.radialGradient(a, X, Y, 3, w, rows, p0, p1, p4, p5, p2, p3);
+			if(!Arrays.equals(e, a)) return "radialGradient";
+			expect.squircle(e, A, B, X, Y, 3, w, rows, p0, p1, p4 * 2.0f, p5);
+			actual.squircle(a, A, B, X, Y, 3, w, rows, p0, p1, p4 * 2.0f, p5);
+			if(!Arrays.equals(e, a)) return "squircle";
+			expect.spiral(e, V, X, Y, 3, w, rows, p0, p1, (float)Math.floor(p4 * 4.0f), p5, preview);
+			actual.spiral(a, V, X, Y, 3, w, rows, p0, p1, (float)Math.floor(p4 * 4.0f), p5, preview);
+			if(!Arrays.equals(e, a)) return "spiral";
+			expect.flower(e, X, Y, 3, w, rows, p0, p1, p4, p5, p4 * p5, p2, p3, 5.0f, 2.0f / w, preview);
+			actual.flower(a, X, Y, 3, w, rows, p0, p1, p4, p5, p4 * p5, p2, p3, 5.0f, 2.0f / w, preview);
+			if(!Arrays.equals(e, a)) return "flower";
+			expect.polarTheta(e, X, Y, 3, w, rows, p0, p1, p2, p3, preview);
+			actual.polarTheta(a, X, Y, 3, w, rows, p0, p1, p2, p3, preview);
+			if(!Arrays.equals(e, a)) return "polarTheta";
+			float m = (p3 - p1) / (p2 - p0);
+			expect.linearGradient(e, X, X, 0, 3, 1, 0, w, rows, p0, p1, p2, p3, m, m * p0 - p1, p4, preview);
+			actual.linearGradient(a, X, X, 0, 3, 1, 0, w, rows, p0, p1, p2, p3, m, m * p0 - p1, p4, preview);
+			if(!Arrays.equals(e, a)) return "linearGradient";
+		}
+		return null;
+	}
+}
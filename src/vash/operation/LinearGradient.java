@@ -47,85 +47,61 @@ public class LinearGradient extends OperationNode {
 		return new LinearGradient(p0.clone(), p1.clone());
 	}
 
-	private void _computeInternal(
-			Plane out, float w, float h, 
-			float[] X, float[] Y, 
-			float x0, float y0, float x1, float y1) {
-		float denom, b, m, d0to1, intX, intY, d0toInt, d1toInt, d;
-
-		denom = x1 - x0;
-        m = (y1 - y0) / denom;
-        b = m * x0 - y0;
-        d0to1 = distance(x0, y0, x1, y1);
-
-	    for(int j = 0; j < h; j++ ) {
-			for(int i = 0; i < w; i++) {
-				intX = (m * Y[j] + X[i] - m * b) / (m * m + 1);
-				intY = (m * m * Y[j] + m * X[i] + b) / (m * m + 1);
-				
-				d0toInt = distance(x0, y0, intX, intY);
-				d1toInt = distance(x1, y1, intX, intY);
-				d = d0toInt / d0to1;
-				
-				if((d0toInt + d1toInt) > (d0to1 + 0.0001)) {
-					if(d1toInt > d0toInt) {
-						out.data[i][j] = -1.0f;
-					} else {
-						out.data[i][j] = 1.0f;
-					}
-				} else {
-					out.data[i][j] = d * 2.0f - 1.0f;
-				}
-			}
-		}
-	}
-
-	
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float w = ip.getW();
-		float h = ip.getH();
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
 		float x0 = (float)p0.getX();
 		float y0 = (float)p0.getY();
 		float x1 = (float)p1.getX();
 		float y1 = (float)p1.getY();
 		Plane out = ip.getPlane();
-		float denom;
+		float[] X = ip.getImageXValues();
+		float[] Y = ip.getImageYValues();
 
-		denom = x1 - x0;
-		if(denom < 0.1f) {
-			/*
-			 * Since we use the slope to compute the gradient, we have a nasty
-			 * singularity when the slope is infinite.  If the slope is near
-			 * infinite, we compute the gradient on the plane mirrored about
-			 * y=x and then flip the result back when we are done.
-			 */
-			if(w == h) {
-				_computeInternal(out, w, h, X, Y, y0, x0, y1, x1);
-				Plane tmp = ip.getPlane();
-				for(int j = 0; j < h; j++) {
-					for(int i = 0; i < w; i++) {
-						tmp.data[i][j] = out.data[j][i];
-					}
-				}
-				ip.putPlane(out);
-				out = tmp;
-			} else {
-				Plane yxOut = ip.getYXPlane();
-				_computeInternal(yxOut, h, w, Y, X, y0, x0, y1, x1);
-				for(int j = 0; j < h; j++) {
-					for(int i = 0; i < w; i++) {
-						out.data[i][j] = yxOut.data[(int)h - j - 1][(int)w - i - 1];
-					}
-				}
-				ip.putYXPlane(yxOut);
-			}
-		} else {
-			_computeInternal(out, w, h, X, Y, x0, y0, x1, y1);
+		/*
+		 * Since we use the slope to compute the gradient, we have a nasty
+		 * singularity when the slope is infinite.  If the slope is near
+		 * infinite, we compute the gradient on the plane mirrored about
+		 * y=x, so each pixel takes its X value from its row and its Y value
+		 * from its column.
+		 * 
+		 * The mirroring is done over the full image, so if we are only
+		 * computing a tile, or samples, we need to pick out the 
+		 * coordinates of the mirror image of the tile.
+		 */
+		boolean mirrored = x1 - x0 < 0.1f;
+		if(mirrored) {
+			float tmp;
+			tmp = x0; x0 = y0; y0 = tmp;
+			tmp = x1; x1 = y1; y1 = tmp;
+			X = ip.getMirroredXValues();
+			Y = ip.getMirroredYValues();
 		}
+		float m = (y1 - y0) / (x1 - x0);
+		float b = m * x0 - y0;
+		float d0to1 = distance(x0, y0, x1, y1);
+		Kernels.get().linearGradient(out.data, X, Y, ip.getOffsetX(), ip.getOffsetY(), ip.getStep(), 
+				0, ip.getW(), ip.getH(), x0, y0, x1, y1, m, b, d0to1, mirrored);
 		
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x0 = (float)p0.getX();
+		float y0 = (float)p0.getY();
+		float x1 = (float)p1.getX();
+		float y1 = (float)p1.getY();
+
+		// see compute: near vertical gradients are computed mirrored about y=x
+		boolean mirrored = x1 - x0 < 0.1f;
+		if(mirrored) {
+			float tmp;
+			tmp = x0; x0 = y0; y0 = tmp;
+			tmp = x1; x1 = y1; y1 = tmp;
+		}
+		float m = (y1 - y0) / (x1 - x0);
+		float b0 = m * x0 - y0;
+		float d0to1 = distance(x0, y0, x1, y1);
+		return b.emit(Program.OP_GRADIENT_LINEAR, -1, -1, x0, y0, x1, y1, m, b0, d0to1, mirrored ? 1.0f : 0.0f);
+	}
 }
@@ -49,17 +49,11 @@ public class LinearGradient1 extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float w = ip.getW();
-		float h = ip.getH();
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
 		float x0 = (float)p0.getX();
 		float y0 = (float)p0.getY();
 		float x1 = (float)p1.getX();
 		float y1 = (float)p1.getY();
 		Plane out = ip.getPlane();
-		float pX, pY, ppY;
-		float color;
 		
 		// get angle p0->p1 vector (Note: subtract p0 so we are from the origin)
 		double ang = Math.atan2(y1 - y0, x1 - x0);
@@ -74,25 +68,21 @@ public class LinearGradient1 extends OperationNode {
 		float sa = (float)Math.sin(ang);
 		float ca = (float)Math.cos(ang);
 		
-	    for(int j = 0; j < h; j++ ) {
-	    	pY = Y[j] - y0;
-			for(int i = 0; i < w; i++) {
-				pX = X[i] - x0;
-
-				// rotate by ang
-				//ppX = pX * ca - pY * sa; // Note: we don't need the x component
-				ppY = pX * sa + pY * ca;
-
-				// lightness is distance along p1->p0, but centered at p0
-				color =  ppY / len + 1.0f;
-				
-				// scale into [-1,1] and clamp
-				color -= 0.5f;
-				color *= 2.0f;
-				out.data[i][j] = clampf(color, -1.0f, 1.0f);
-			}
-		}
-
+		Kernels.get().linearGradient1(out.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x0, y0, len, sa, ca);
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x0 = (float)p0.getX();
+		float y0 = (float)p0.getY();
+		float x1 = (float)p1.getX();
+		float y1 = (float)p1.getY();
+		double ang = Math.PI * 3.0 / 2.0 - Math.atan2(y1 - y0, x1 - x0);
+		float len = distance(x0, y0, x1, y1);
+		float sa = (float)Math.sin(ang);
+		float ca = (float)Math.cos(ang);
+		return b.emit(Program.OP_GRADIENT_LINEAR1, -1, -1, x0, y0, len, sa, ca);
+	}
 }
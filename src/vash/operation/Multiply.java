@@ -33,16 +33,19 @@ public class Multiply extends BinaryOperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		Plane A = _children[0].compute(ip);
-		Plane B = _children[1].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				out.data[i][j] = A.data[i][j] * B.data[i][j];
-			}
-	    }
-	    ip.putPlane(A);
-	    ip.putPlane(B);
+		Plane[] in = computeChildren(ip);
+		Plane A = in[0];
+		Plane B = in[1];
+		Plane out = ip.getResultPlane(A, B);
+		Kernels.get().multiply(out.data, A.data, B.data, ip.getW() * ip.getH());
+	    ip.putInputPlanes(out, A, B);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int a = _children[0].emit(b);
+		int c = _children[1].emit(b);
+		return b.emit(Program.OP_MULTIPLY, a, c);
+	}
 }
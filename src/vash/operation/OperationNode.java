@@ -21,9 +21,14 @@ package vash.operation;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.value.Value;
 
 
@@ -132,6 +137,51 @@ abstract public class OperationNode {
 		}
 	}
 	
+	/**
+	 * Returns a hash of the kind of this node, its values, and the structure
+	 * of its children.  Nodes that are structurallyEquals have the same hash.
+	 */
+	public int structuralHash() {
+		int hash = this.getClass().getName().hashCode();
+		if(_values != null) {
+			for(Value v : _values) {
+				hash = hash * 31 + v.hashCode();
+			}
+		}
+		if(_children != null) {
+			for(OperationNode child : _children) {
+				hash = hash * 31 + child.structuralHash();
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns true if the other node is the same kind of node as this one,
+	 * with equal values, and with children that are structurally equal to
+	 * ours.  Structurally equal trees compute exactly the same planes.
+	 * @param other
+	 */
+	public boolean structurallyEquals(OperationNode other) {
+		if(this == other)
+			return true;
+		if(other == null || other.getClass() != this.getClass())
+			return false;
+		if(_values != null) {
+			for(int i = 0; i < _values.length; i++) {
+				if(!_values[i].equals(other._values[i]))
+					return false;
+			}
+		}
+		if(_children != null) {
+			for(int i = 0; i < _children.length; i++) {
+				if(!_children[i].structurallyEquals(other._children[i]))
+					return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Write info about the node (and its children) to a file.
 	 * @param fp
@@ -158,6 +208,183 @@ abstract public class OperationNode {
 		}
 	}
 	
+	/**
+	 * The estimated cost, in node-pixels, above which a child is worth 
+	 * handing to another thread when we are computing in a ForkJoinPool.
+	 */
+	private static final long PARALLEL_THRESHOLD = 1 << 20;
+	
+	// the order in which to compute our children, the planes it needs, and
+	// the number of nodes in our tree
+	private volatile int[] _order = null;
+	private int _need = 0;
+	private int _nodes = 0;
+
+	/**
+	 * Return the number of nodes in the tree rooted at this node.
+	 */
+	public int getNodeCount() {
+		_plan();
+		return _nodes;
+	}
+	
+	/**
+	 * Return an estimate of the work needed to compute this node and its 
+	 * children for the given parameters.  The cost is in units of pixels 
+	 * computed by a single node.
+	 */
+	public long estimateCost(ImageParameters ip) {
+		return (long)getNodeCount() * ip.getW() * ip.getH();
+	}
+	
+	/**
+	 * Returns the number of planes that must be live at once to compute this
+	 * node serially, including the plane of its result: its Sethi-Ullman 
+	 * number.  The plane of each child is held while the children after it
+	 * are computed, so we compute the children that need the most planes 
+	 * first, which makes this as small as it can be.  Const leaves are 
+	 * counted as a full plane, so this is an upper bound.
+	 */
+	public int getPlaneNeed() {
+		_plan();
+		return _need;
+	}
+	
+	/**
+	 * Returns the number of planes that hold this node's result.
+	 */
+	int getResultPlaneCount() {
+		return 1;
+	}
+	
+	/*
+	 * Order our children by decreasing plane need, keeping their order where
+	 * the need is equal, and work out our own need and node count.  The 
+	 * tree's structure does not change once it is being computed, so we 
+	 * only do this once.
+	 */
+	private int[] _plan() {
+		int[] order = _order;
+		if(order != null)
+			return order;
+		int n = getChildCount();
+		final int[] needs = new int[n];
+		Integer[] sorted = new Integer[n];
+		int nodes = 1;
+		for(int i = 0; i < n; i++) {
+			needs[i] = _children[i].getPlaneNeed();
+			nodes += _children[i].getNodeCount();
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return needs[b] - needs[a];
+			}
+		});
+		order = new int[n];
+		int need = n + getResultPlaneCount();
+		for(int p = 0; p < n; p++) {
+			order[p] = sorted[p];
+			need = Math.max(need, needs[order[p]] + p);
+		}
+		_need = need;
+		_nodes = nodes;
+		_order = order;
+		return order;
+	}
+	
+	/*
+	 * Compute a child on another thread, with the shared planes of the 
+	 * computation that forked it.
+	 */
+	private static class ChildTask extends RecursiveTask<Plane> {
+		private static final long serialVersionUID = 1L;
+		private final OperationNode child;
+		private final ImageParameters ip;
+		private final Shared.Planes planes = Shared.getPlanes();
+		
+		ChildTask(OperationNode child, ImageParameters ip) {
+			this.child = child;
+			this.ip = ip;
+		}
+		
+		@Override
+		protected Plane compute() {
+			Shared.Planes prior = Shared.setPlanes(this.planes);
+			try {
+				return child.compute(this.ip);
+			} finally {
+				Shared.setPlanes(prior);
+			}
+		}
+	}
+	
+	/**
+	 * Compute all of our children and return their planes, in order.  The 
+	 * children are independent of each other, so they are computed in the
+	 * order that needs the fewest planes (see getPlaneNeed), and if we are 
+	 * running in a ForkJoinPool, children that are expensive enough are 
+	 * forked to be computed by other workers while we compute the child 
+	 * that needs the most planes.  Nodes with several children should use 
+	 * this in place of calling compute on each child.
+	 * @param ip
+	 * @return one plane for each child; each must be returned with putPlane
+	 */
+	protected Plane[] computeChildren(ImageParameters ip) {
+		Plane[] planes = new Plane[_children.length];
+		int[] order = _plan();
+		ChildTask[] tasks = null;
+		if(_children.length > 1 && ForkJoinTask.inForkJoinPool()) {
+			for(int p = 1; p < order.length; p++) {
+				int i = order[p];
+				if(_children[i].estimateCost(ip) >= PARALLEL_THRESHOLD) {
+					if(tasks == null) tasks = new ChildTask[_children.length];
+					tasks[i] = new ChildTask(_children[i], ip);
+					tasks[i].fork();
+				}
+			}
+		}
+		// at COMPACT quality, the planes that are held while a later child that
+		// needs more than one plane is computed here are packed into 16 bits
+		// per value; packing a plane for the sake of a leaf costs more than 
+		// it saves, since the plane must be unpacked again
+		int last = -1;
+		if(ip.getQuality() == Quality.COMPACT) {
+			for(int p = 0; p < order.length; p++) {
+				int i = order[p];
+				if((tasks == null || tasks[i] == null) && _children[i].getPlaneNeed() > 1)
+					last = p;
+			}
+		}
+		short[][] packed = null;
+		for(int p = 0; p < order.length; p++) {
+			int i = order[p];
+			if(tasks == null || tasks[i] == null) {
+				planes[i] = _children[i].compute(ip);
+				if(p < last) {
+					if(packed == null) packed = new short[_children.length][];
+					packed[i] = ip.packPlane(planes[i]);
+					if(packed[i] != null) planes[i] = null;
+				}
+			}
+		}
+		if(tasks != null) {
+			for(int p = order.length - 1; p > 0; p--) {
+				int i = order[p];
+				if(tasks[i] != null) {
+					planes[i] = tasks[i].join();
+				}
+			}
+		}
+		if(packed != null) {
+			for(int i = 0; i < packed.length; i++) {
+				if(packed[i] != null) planes[i] = ip.unpackPlane(packed[i]);
+			}
+		}
+		return planes;
+	}
+	
 	/**
 	 * A utility function used by many nodes when computing values.
 	 */
@@ -179,6 +406,40 @@ abstract public class OperationNode {
 		return (float)Math.sqrt(xp * xp + yp * yp);
 	}
 
+	/**
+	 * Lower this node, and its children, into the program being built.  The 
+	 * children must be emitted first, then this node, using the values this
+	 * node would use in compute.  Every node can be compiled, so a new node 
+	 * must implement this along with compute.
+	 * @param b
+	 * @return the register that holds our result
+	 */
+	abstract int emit(Program.Builder b);
+
+	/**
+	 * Optimize our children, replacing them in place, then return the node
+	 * that should replace this node in the tree.
+	 * @param opt
+	 * @return this node or its replacement
+	 */
+	OperationNode optimize(Optimizer opt) {
+		if(_children != null) {
+			for(int i = 0; i < _children.length; i++) {
+				_children[i] = _children[i].optimize(opt);
+			}
+		}
+		return opt.intern(this.simplify());
+	}
+	
+	/**
+	 * Return a simpler node that computes exactly the same plane as this 
+	 * one, or this node if there is none.  Our children are already 
+	 * optimized, so children that are structurally equal are the same node.
+	 */
+	OperationNode simplify() {
+		return this;
+	}
+
 	/**
 	 * Create and return a completely independent copy of this node.
 	 */
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+
+/**
+ * Rewrite a tree into a cheaper tree that computes exactly the same image.  
+ * The optimizer works on a copy of the tree, so the original tree and its 
+ * values are left untouched.  Provably redundant nodes, such as an Invert 
+ * of an Invert, are removed.  Then subtrees that are structurally equal are
+ * merged, turning the tree into a DAG in which each distinct subtree is
+ * computed only once per image.  Every rewrite is exact: the optimized tree 
+ * computes the same bits as the original at Quality.CANONICAL.
+ * 
+ * Since the merged subtrees are compared by their values, the tree must be 
+ * optimized again if its values change.
+ */
+public final class Optimizer {
+	// the distinct nodes of the optimized tree, by structure
+	private final HashMap<Key, OperationNode> interned = new HashMap<Key, OperationNode>();
+	private final ColorNode tree;
+	private final int nodesSaved;
+	private final int planesSaved;
+
+	/**
+	 * Optimize a copy of the given tree.
+	 * @param tree
+	 */
+	public Optimizer(ColorNode tree) {
+		ColorNode copy = (ColorNode)tree.clone();
+		copy.optimize(this);
+		_share(copy);
+		this.tree = copy;
+		this.nodesSaved = tree.getNodeCount() - _countNodes(copy, new IdentityHashMap<OperationNode, Boolean>());
+		this.planesSaved = tree.getPlaneNeed() - copy.getPlaneNeed();
+	}
+	
+	/*
+	 * A hash key that compares nodes by their structure.
+	 */
+	private static final class Key {
+		private final OperationNode node;
+		private final int hash;
+		
+		Key(OperationNode node) {
+			this.node = node;
+			this.hash = node.structuralHash();
+		}
+		
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && this.node.structurallyEquals(((Key)other).node);
+		}
+	}
+	
+	/**
+	 * Returns the optimized tree.
+	 */
+	public ColorNode getTree() {
+		return this.tree;
+	}
+	
+	/**
+	 * Returns the number of nodes removed from the tree, counting each 
+	 * shared subtree once.  Every node computes one plane for every image or
+	 * tile, so this is also the number of plane computations saved for each
+	 * image.
+	 */
+	public int getNodesSaved() {
+		return this.nodesSaved;
+	}
+	
+	/**
+	 * Returns the reduction in the number of planes that must be live at 
+	 * once to compute the tree, as given by getPlaneNeed.
+	 */
+	public int getPlanesSaved() {
+		return this.planesSaved;
+	}
+	
+	private static int _countNodes(OperationNode node, IdentityHashMap<OperationNode, Boolean> seen) {
+		if(seen.put(node, Boolean.TRUE) != null)
+			return 0;
+		int count = (node instanceof Shared) ? 0 : 1;
+		for(int i = 0; i < node.getChildCount(); i++) {
+			count += _countNodes(node.getChild(i), seen);
+		}
+		return count;
+	}
+	
+	/*
+	 * Count the parents of every node, then put a Shared between each node 
+	 * that has several parents and those parents.
+	 */
+	private static void _share(ColorNode root) {
+		IdentityHashMap<OperationNode, Integer> parents = new IdentityHashMap<OperationNode, Integer>();
+		_countParents(root, parents);
+		_insertShared(root, parents, new IdentityHashMap<OperationNode, Shared>());
+	}
+	
+	private static void _countParents(OperationNode node, IdentityHashMap<OperationNode, Integer> parents) {
+		for(int i = 0; i < node.getChildCount(); i++) {
+			OperationNode child = node._children[i];
+			Integer n = parents.get(child);
+			parents.put(child, (n == null) ? 1 : n + 1);
+			if(n == null)
+				_countParents(child, parents);
+		}
+	}
+	
+	private static void _insertShared(OperationNode node, IdentityHashMap<OperationNode, Integer> parents, 
+			IdentityHashMap<OperationNode, Shared> shared) 
+	{
+		for(int i = 0; i < node.getChildCount(); i++) {
+			OperationNode child = node._children[i];
+			int n = parents.get(child);
+			if(n == 1) {
+				_insertShared(child, parents, shared);
+				continue;
+			}
+			Shared s = shared.get(child);
+			if(s == null) {
+				s = new Shared(child, n);
+				shared.put(child, s);
+				_insertShared(child, parents, shared);
+			}
+			node._children[i] = s;
+		}
+	}
+	
+	/**
+	 * Returns the node that is structurally equal to the given node, which 
+	 * was seen first, or the node itself if it is the first.  The node's
+	 * children must already be interned.
+	 * @param node
+	 */
+	OperationNode intern(OperationNode node) {
+		Key key = new Key(node);
+		OperationNode first = this.interned.get(key);
+		if(first != null)
+			return first;
+		this.interned.put(key, node);
+		return node;
+	}
+}
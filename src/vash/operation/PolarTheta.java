@@ -20,6 +20,7 @@ package vash.operation;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.Seed;
 import vash.value.Position;
 import vash.value.Wrapping;
@@ -30,8 +31,8 @@ public class PolarTheta extends OperationNode {
 	
 	private PolarTheta(Position center, Wrapping angle) {
 		super(2, 0);
-		assert(this.center.hasBounds(-1, -1, 1, 1));
-		assert(this.angle.hasBounds(-1, 1));
+		assert(center.hasBounds(-1, -1, 1, 1));
+		assert(angle.hasBounds(-1, 1));
 		_values[0] = this.center = center;
 		_values[1] = this.angle = angle;
 	}
@@ -53,28 +54,27 @@ public class PolarTheta extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float x0, y0, x1, y1;
+		boolean preview = ip.getQuality() == Quality.PREVIEW;
 		float angle = (float)(this.angle.getV());
         float ca = (float)Math.cos(angle * Math.PI);
         float sa = (float)Math.sin(angle * Math.PI);
 		float x = (float)this.center.getX();
 		float y = (float)this.center.getY();
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
-		float w = ip.getW();
-		float h = ip.getH();
 		Plane out = ip.getPlane();
 		
-		for(int j = 0; j < h; j++) {
-			y0 = Y[j] - y;
-			for(int i = 0; i < w; i++) {
-				x0 = X[i] - x;
-				x1 = (x0 * ca) - (y0 * sa);
-				y1 = (x0 * sa) + (y0 * ca);
-				out.data[i][j] = (float)(Math.atan2(y1, x1) / Math.PI);
-			}
-		}
+		Kernels.get().polarTheta(out.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x, y, ca, sa, preview);
 		
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float angle = (float)(this.angle.getV());
+		float ca = (float)Math.cos(angle * Math.PI);
+		float sa = (float)Math.sin(angle * Math.PI);
+		float x = (float)this.center.getX();
+		float y = (float)this.center.getY();
+		return b.emit(Program.OP_POLAR_THETA, -1, -1, x, y, ca, sa);
+	}
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import vash.ImageParameters;
+import vash.PixelBuffer;
+import vash.PixelFormat;
+
+
+/**
+ * A tree of operations, lowered into a flat list of instructions.  Each 
+ * instruction reads its inputs from registers, writes its output to a 
+ * register, and carries any constants its node needs, precomputed from the
+ * node's values.  A program is run over bands of a few rows at a time, so 
+ * that every register fits in the cpu cache, and the instructions are 
+ * dispatched by a single loop, rather than by recursing through the tree.
+ * The output is identical to computing the tree directly.
+ * 
+ * A Program holds a snapshot of its tree's values: if the values change, the
+ * tree must be compiled again.
+ */
+public final class Program {
+	// opcodes
+	static final int OP_CONST = 0;
+	static final int OP_ABSOLUTE = 1;
+	static final int OP_INVERT = 2;
+	static final int OP_ADD = 3;
+	static final int OP_DIVIDE = 4;
+	static final int OP_EXPONENTIATE = 5;
+	static final int OP_MODULUS = 6;
+	static final int OP_MULTIPLY = 7;
+	static final int OP_SINC = 8;
+	static final int OP_SINE = 9;
+	static final int OP_SPIRAL = 10;
+	static final int OP_SQUIRCLE = 11;
+	static final int OP_ELLIPSE = 12;
+	static final int OP_FLOWER = 13;
+	static final int OP_GRADIENT_LINEAR = 14;
+	static final int OP_GRADIENT_LINEAR1 = 15;
+	static final int OP_GRADIENT_RADIAL = 16;
+	static final int OP_POLAR_THETA = 17;
+	
+	// each instruction is: opcode, dst, src0, src1, offset of constants
+	static final int INSN_SIZE = 5;
+	
+	// the number of values per register; sized so that registers stay in L1
+	private static final int BUFFER_SIZE = 1024;
+
+	private final int[] code;
+	private final float[] consts;
+	private final int registerCount;
+	private final int[] output;
+	private final ThreadLocal<float[][]> registers = new ThreadLocal<float[][]>();
+	private volatile FusedKernel kernel = null;
+	
+	
+	/**
+	 * Collects instructions and assigns registers while a tree is lowered.
+	 * Nodes emit their children first, then themselves, so that the 
+	 * registers holding the children's results can be re-used as soon as 
+	 * the node has consumed them.
+	 */
+	static final class Builder {
+		private int[] code = new int[64];
+		private int codeSize = 0;
+		private float[] consts = new float[64];
+		private int constSize = 0;
+		private final ArrayList<Integer> free = new ArrayList<Integer>();
+		private int registerCount = 0;
+		private int[] output = null;
+		// registers of shared subtrees, and how many more reads they have left
+		private final IdentityHashMap<Object, Integer> shared = new IdentityHashMap<Object, Integer>();
+		private final HashMap<Integer, Integer> reads = new HashMap<Integer, Integer>();
+		
+		private int alloc() {
+			if(free.size() > 0) {
+				return free.remove(free.size() - 1);
+			}
+			return registerCount++;
+		}
+		
+		private void release(int r) {
+			Integer n = reads.get(r);
+			if(n == null) {
+				free.add(r);
+			} else if(n == 1) {
+				reads.remove(r);
+				free.add(r);
+			} else {
+				reads.put(r, n - 1);
+			}
+		}
+		
+		/**
+		 * Returns the register holding the shared subtree with the given key,
+		 * or -1 if it has not been emitted yet.
+		 */
+		int getShared(Object key) {
+			Integer r = shared.get(key);
+			return (r == null) ? -1 : r;
+		}
+		
+		/**
+		 * Record that the given register holds a shared subtree which will 
+		 * be read the given number of times, so that it is not freed until 
+		 * the last read.
+		 */
+		void setShared(Object key, int r, int readers) {
+			shared.put(key, r);
+			reads.put(r, readers);
+		}
+		
+		/**
+		 * Append an instruction that consumes the registers src0 and src1 
+		 * (or -1 if not used) and return the register that holds its result.
+		 */
+		int emit(int opcode, int src0, int src1, float... values) {
+			if(src1 >= 0) release(src1);
+			if(src0 >= 0) release(src0);
+			int dst = alloc();
+
+			if(codeSize + INSN_SIZE > code.length) {
+				code = Arrays.copyOf(code, code.length * 2);
+			}
+			code[codeSize++] = opcode;
+			code[codeSize++] = dst;
+			code[codeSize++] = src0;
+			code[codeSize++] = src1;
+			code[codeSize++] = constSize;
+			
+			if(constSize + values.length > consts.length) {
+				consts = Arrays.copyOf(consts, Math.max(consts.length * 2, constSize + values.length));
+			}
+			System.arraycopy(values, 0, consts, constSize, values.length);
+			constSize += values.length;
+			return dst;
+		}
+		
+		/**
+		 * Set the registers that hold the red, green, and blue results.
+		 */
+		void setOutput(int r, int g, int b) {
+			output = new int[] {r, g, b};
+		}
+	}
+
+	
+	private Program(Builder b) {
+		this.code = Arrays.copyOf(b.code, b.codeSize);
+		this.consts = Arrays.copyOf(b.consts, b.constSize);
+		this.registerCount = b.registerCount;
+		this.output = b.output;
+	}
+	
+	
+	/**
+	 * Lower the tree rooted at the given color node into a program.
+	 * @throws IllegalStateException if the root node does not set the 
+	 * 			program's output
+	 */
+	public static Program compile(ColorNode root) {
+		Builder b = new Builder();
+		root.emit(b);
+		if(b.output == null) {
+			throw new IllegalStateException("The root node did not set the program output");
+		}
+		return new Program(b);
+	}
+	
+	
+	/**
+	 * Generate a fused kernel for this program, so that subsequent calls to 
+	 * run compute each pixel in a single pass, with no intermediate planes.
+	 * The kernel's class is generated on first use of a tree's shape and 
+	 * shared between all programs with that shape.  The output is identical.
+	 * @return false if no class could be generated for this program, in 
+	 * 			which case we continue to interpret it
+	 */
+	public boolean fuse() {
+		if(this.kernel == null) {
+			this.kernel = FusedKernel.create(code, consts, output);
+		}
+		return this.kernel != null;
+	}
+	
+	/**
+	 * Returns true if this program has been fused.
+	 */
+	public boolean isFused() {
+		return this.kernel != null;
+	}
+	
+	/**
+	 * Returns the number of instructions in this program.
+	 */
+	public int getInstructionCount() {
+		return code.length / INSN_SIZE;
+	}
+	
+	/**
+	 * Returns the number of registers this program needs.
+	 */
+	public int getRegisterCount() {
+		return registerCount;
+	}
+	
+	
+	/**
+	 * Compute the pixels covered by ip and store them into pix, exactly as 
+	 * ColorNode.compute(ImageParameters, byte[]) would.  A program may be run
+	 * from several threads at once.
+	 * @param ip
+	 * @param pix a buffer of ip.getImageW() * ip.getImageH() * 3 bytes
+	 */
+	public void run(ImageParameters ip, byte[] pix) {
+		run(ip, new PixelBuffer(pix, 0, ip.getImageW() * 3, PixelFormat.BGR));
+	}
+	
+	/**
+	 * Compute the pixels covered by ip and store them into out, exactly as 
+	 * ColorNode.compute(ImageParameters, PixelBuffer) would.
+	 */
+	public void run(ImageParameters ip, PixelBuffer out) {
+		FusedKernel k = this.kernel;
+		if(k != null) {
+			k.run(ip, out);
+			return;
+		}
+		
+		int w = ip.getW();
+		int h = ip.getH();
+		int rows = Math.max(1, Math.min(h, BUFFER_SIZE / w));
+		float[][] regs = getRegisters(rows * w);
+		Kernels kernels = Kernels.get();
+		
+		for(int y = 0; y < h; y += rows) {
+			int n = Math.min(rows, h - y);
+			for(int pc = 0; pc < code.length; pc += INSN_SIZE) {
+				float[] dst = regs[code[pc + 1]];
+				float[] a = (code[pc + 2] >= 0) ? regs[code[pc + 2]] : null;
+				float[] b = (code[pc + 3] >= 0) ? regs[code[pc + 3]] : null;
+				int c = code[pc + 4];
+				switch(code[pc]) {
+				case OP_CONST: 				Arrays.fill(dst, 0, n * w, consts[c]); break;
+				case OP_ABSOLUTE: 			kernels.absolute(dst, a, n * w); break;
+				case OP_INVERT:				kernels.invert(dst, a, n * w); break;
+				case OP_ADD:				kernels.add(dst, a, b, n * w); break;
+				case OP_DIVIDE:				kernels.divide(dst, a, b, n * w); break;
+				case OP_EXPONENTIATE:		kernels.exponentiate(dst, a, b, n * w); break;
+				case OP_MODULUS:			kernels.modulus(dst, a, b, n * w); break;
+				case OP_MULTIPLY:			kernels.multiply(dst, a, b, n * w); break;
+				case OP_SINC:				kernels.sinc(dst, a, n * w, consts[c], consts[c + 1], false); break;
+				case OP_SINE:				kernels.sine(dst, a, n * w, consts[c], consts[c + 1], false); break;
+				case OP_SPIRAL:
+					kernels.spiral(dst, a, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], false);
+					break;
+				case OP_SQUIRCLE:
+					kernels.squircle(dst, a, b, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3]);
+					break;
+				case OP_ELLIPSE:
+					kernels.ellipse(dst, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], consts[c + 4], 
+							ip.getFringe());
+					break;
+				case OP_FLOWER:
+					kernels.flower(dst, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], consts[c + 4], 
+							consts[c + 5], consts[c + 6], consts[c + 7], ip.getFringe(), false);
+					break;
+				case OP_GRADIENT_LINEAR: {
+					boolean mirrored = consts[c + 7] != 0.0f;
+					kernels.linearGradient(dst, 
+							mirrored ? ip.getMirroredXValues() : ip.getImageXValues(), 
+							mirrored ? ip.getMirroredYValues() : ip.getImageYValues(), 
+							ip.getOffsetX(), ip.getOffsetY(), ip.getStep(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], 
+							consts[c + 4], consts[c + 5], consts[c + 6], mirrored);
+					break;
+				}
+				case OP_GRADIENT_LINEAR1:
+					kernels.linearGradient1(dst, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], consts[c + 4]);
+					break;
+				case OP_GRADIENT_RADIAL:
+					kernels.radialGradient(dst, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], consts[c + 4], consts[c + 5]);
+					break;
+				case OP_POLAR_THETA:
+					kernels.polarTheta(dst, ip.getXValues(), ip.getYValues(), y, w, n, 
+							consts[c], consts[c + 1], consts[c + 2], consts[c + 3], false);
+					break;
+				default:
+					throw new IllegalStateException("Unknown opcode: " + code[pc]);
+				}
+			}
+			quantize(regs[output[0]], regs[output[1]], regs[output[2]], ip, y, n, out);
+		}
+	}
+	
+	private float[][] getRegisters(int size) {
+		float[][] regs = registers.get();
+		if(regs == null || regs.length < registerCount || regs[0].length < size) {
+			regs = new float[registerCount][size];
+			registers.set(regs);
+		}
+		return regs;
+	}
+	
+	
+	/*
+	 * Write n rows, starting at row y of ip, into the pixel buffer, exactly
+	 * as RGB_Space does.
+	 */
+	private static void quantize(float[] R, float[] G, float[] B, ImageParameters ip, int y, int n, PixelBuffer out) {
+		int w = ip.getW();
+		int ih = ip.getImageH();
+		int ox = ip.getOffsetX();
+		int oy = ip.getOffsetY();
+		int step = ip.getStep();
+		for(int j = 0; j < n; j++) {
+			// Note: rows are stored bottom to top
+			out.putRow(ih - 1 - (oy + (y + j) * step), ox, step, R, G, B, j * w, w);
+		}
+	}
+}
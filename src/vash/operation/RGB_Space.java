@@ -19,6 +19,7 @@
 package vash.operation;
 
 import vash.ImageParameters;
+import vash.PixelBuffer;
 import vash.Plane;
 import vash.Seed;
 
@@ -46,29 +47,40 @@ public class RGB_Space extends ColorNode {
 
 	@Override
 	public byte[] compute(ImageParameters ip, boolean this_method_is_different) {
+		byte pix[] = new byte[ip.getImageW() * ip.getImageH() * 3];
+		compute(ip, pix);
+		return pix;
+	}
+
+	@Override
+	public void compute(ImageParameters ip, PixelBuffer out) {
 		int w = ip.getW();
 		int h = ip.getH();
-		Plane R = _children[0].compute(ip);
-		Plane G = _children[1].compute(ip);
-		Plane B = _children[2].compute(ip);
-		byte pix[] = new byte[w * h * 3];
+		int ih = ip.getImageH();
+		int ox = ip.getOffsetX();
+		int oy = ip.getOffsetY();
+		int step = ip.getStep();
+		Plane[] in = computeChannels(ip);
+		Plane R = in[0];
+		Plane G = in[1];
+		Plane B = in[2];
 
-		int index = 0;
 		for (int y = h - 1; y >= 0; y--) {
-		    for (int x = 0; x < w; x++) {
-		    	byte r = (byte)Math.floor((R.data[x][y] + 1.0f) / 2.0f * 255.0f);
-		    	byte g = (byte)Math.floor((G.data[x][y] + 1.0f) / 2.0f * 255.0f);
-		    	byte b = (byte)Math.floor((B.data[x][y] + 1.0f) / 2.0f * 255.0f);
-		    	pix[index++] = b;
-		    	pix[index++] = g;
-		    	pix[index++] = r;
-		    }
+			// Note: rows are stored bottom to top
+			out.putRow(ih - 1 - (oy + y * step), ox, step, R.data, G.data, B.data, y * w, w);
 		}
 		
 		ip.putPlane(R);
 		ip.putPlane(G);
 		ip.putPlane(B);
-		
-		return pix;
+	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int r = _children[0].emit(b);
+		int g = _children[1].emit(b);
+		int bl = _children[2].emit(b);
+		b.setOutput(r, g, bl);
+		return -1;
 	}
 }
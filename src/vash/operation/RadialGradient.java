@@ -69,15 +69,11 @@ public class RadialGradient extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float x0, y0, x1, y1, x2, y2, tmp;
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
 		float x = (float)this.center.getX();
 		float y = (float)this.center.getY();
 		float w = (float)this.width.getV();
 		float h = (float)this.height.getV();
 		float angle = (float)this.angle.getV();
-		float twoOverSqrtTwo = (float)(2.0 / Math.sqrt(2.0));
 		
 		Plane out = ip.getPlane();
 
@@ -85,25 +81,20 @@ public class RadialGradient extends OperationNode {
         float ca = (float)Math.cos((angle * Math.PI / 180.0) - (Math.PI / 2.0));
         float sa = (float)Math.sin((angle * Math.PI / 180.0) - (Math.PI / 2.0));
 
-		for(int j = 0; j < ip.getH(); j++) {
-			y0 = Y[j] - y;
-			for(int i = 0; i < ip.getW(); i++) {
-				x0 = X[i] - x;
-				
-				// rotate
-				x1 = (x0 * ca) - (y0 * sa);
-				y1 = (x0 * sa) + (y0 * ca);
-				
-				// squeeze by proportion
-				x2 = x1 / w;
-				y2 = y1 / h;
-				
-				// intensity in proportion to distance
-				tmp = -(float)Math.sqrt(x2 * x2 + y2 * y2) * twoOverSqrtTwo + 1.0f;
-				out.data[i][j] = OperationNode.clampf(tmp, -1.0f, 1.0f);
-			}
-		}
-
+		Kernels.get().radialGradient(out.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x, y, w, h, ca, sa);
 		return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x = (float)this.center.getX();
+		float y = (float)this.center.getY();
+		float w = (float)this.width.getV();
+		float h = (float)this.height.getV();
+		float angle = (float)this.angle.getV();
+		float ca = (float)Math.cos((angle * Math.PI / 180.0) - (Math.PI / 2.0));
+		float sa = (float)Math.sin((angle * Math.PI / 180.0) - (Math.PI / 2.0));
+		return b.emit(Program.OP_GRADIENT_RADIAL, -1, -1, x, y, w, h, ca, sa);
+	}
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011, Zettabyte Storage LLC
+ * 
+ * This file is part of Vash.
+ * 
+ * Vash is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Vash is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Vash.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vash.operation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import vash.ImageParameters;
+import vash.Plane;
+
+
+/**
+ * A node that lets several parents share the plane of a single subtree.  The
+ * subtree is computed once per image or tile, and the plane is handed to 
+ * every parent, returning to the pool when the last of them puts it back.  
+ * The optimizer places these in the tree; they are not part of the tree's 
+ * structure.
+ * 
+ * The planes belong to a single computation of the tree: the root computes 
+ * every shared subtree, innermost first, before it computes anything else,
+ * and forgets them when it is done, whether or not it finished.  A Shared 
+ * node only ever takes a plane that is ready, so it never waits for another
+ * parent, and subtrees that hold Shared nodes may be forked like any other.
+ * The cost is memory: the plane of each shared subtree is held from the 
+ * start of the computation until its last parent is done with it, which 
+ * getPlaneNeed counts at the root.
+ */
+final class Shared extends OperationNode {
+	/**
+	 * The planes of the shared subtrees for one computation of a tree, for a
+	 * single image or tile.  The computation's thread, and every task it 
+	 * forks, can see these with getPlanes.
+	 */
+	static final class Planes {
+		private final ImageParameters ip;
+		private final IdentityHashMap<Shared, Plane> ready = new IdentityHashMap<Shared, Plane>();
+		
+		private Planes(ImageParameters ip) {
+			this.ip = ip;
+		}
+	}
+	
+	// the planes of the computation that the current thread is working on
+	private static final ThreadLocal<Planes> current = new ThreadLocal<Planes>();
+
+	private final int parents;
+
+	/**
+	 * @param child the subtree to share
+	 * @param parents the number of times the child is referenced in the tree
+	 */
+	Shared(OperationNode child, int parents) {
+		super(0, 1);
+		_children[0] = child;
+		this.parents = parents;
+	}
+	
+	/**
+	 * Returns the number of parents that share our child.
+	 */
+	int getParentCount() {
+		return this.parents;
+	}
+
+	/**
+	 * A copy of a shared subtree is no longer shared.
+	 */
+	@Override
+	public OperationNode clone() {
+		return _children[0].clone();
+	}
+
+	@Override
+	public int getNodeCount() {
+		return _children[0].getNodeCount();
+	}
+	
+	/**
+	 * Returns the distinct Shared nodes in the tree rooted at the given node,
+	 * each after every Shared node in its own subtree.
+	 */
+	static Shared[] find(OperationNode root) {
+		ArrayList<Shared> found = new ArrayList<Shared>();
+		_find(root, new IdentityHashMap<OperationNode, Boolean>(), found);
+		return found.toArray(new Shared[found.size()]);
+	}
+	
+	private static void _find(OperationNode node, IdentityHashMap<OperationNode, Boolean> seen, ArrayList<Shared> found) {
+		if(seen.put(node, Boolean.TRUE) != null)
+			return;
+		for(int i = 0; i < node.getChildCount(); i++) {
+			_find(node._children[i], seen, found);
+		}
+		if(node instanceof Shared)
+			found.add((Shared)node);
+	}
+	
+	/**
+	 * Returns the planes of the computation that the current thread is 
+	 * working on, or null if there are none.
+	 */
+	static Planes getPlanes() {
+		return current.get();
+	}
+	
+	/**
+	 * Make the given planes those of the current thread, and return the 
+	 * planes they replace, which must be restored with setPlanes when the 
+	 * thread is done with them.
+	 */
+	static Planes setPlanes(Planes planes) {
+		Planes prior = current.get();
+		if(planes == null)
+			current.remove();
+		else
+			current.set(planes);
+		return prior;
+	}
+	
+	/**
+	 * Start a computation of a tree: make a new set of planes those of the 
+	 * current thread, and compute into it the plane of each of the given 
+	 * Shared nodes, innermost first.  The caller must first take the 
+	 * thread's planes with getPlanes, and restore them with setPlanes in a
+	 * finally block.  If a computation fails, planes that were not put back
+	 * are left to the collector.
+	 * @param shared the Shared nodes of the tree, as given by find
+	 * @param ip
+	 */
+	static void begin(Shared[] shared, ImageParameters ip) {
+		if(shared.length == 0)
+			return;
+		Planes planes = new Planes(ip);
+		setPlanes(planes);
+		for(Shared s : shared) {
+			Plane plane = s._children[0].compute(ip);
+			plane.share(s.parents);
+			planes.ready.put(s, plane);
+		}
+	}
+
+	/*
+	 * Take our share of the plane that the root computed.  A Shared node 
+	 * computed for other parameters, or outside of a computation of the 
+	 * whole tree, computes its child itself.
+	 */
+	@Override
+	public Plane compute(ImageParameters ip) {
+		Planes planes = current.get();
+		Plane plane = (planes != null && planes.ip == ip) ? planes.ready.get(this) : null;
+		if(plane == null)
+			return _children[0].compute(ip);
+		return plane;
+	}
+
+	@Override
+	int emit(Program.Builder b) {
+		int r = b.getShared(this);
+		if(r < 0) {
+			r = _children[0].emit(b);
+			b.setShared(this, r, this.parents);
+		}
+		return r;
+	}
+}
@@ -20,6 +20,7 @@ package vash.operation;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.Seed;
 import vash.value.Bounded;
 import vash.value.Wrapping;
@@ -57,20 +58,20 @@ public class Sinc extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
+		boolean preview = ip.getQuality() == Quality.PREVIEW;
 		float freq = (float)this.frequency.getV();
 		float phase = (float)this.phase.getV();
 		Plane A = _children[0].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				float denom = A.data[i][j] * freq + phase;
-				if(denom == 0.0f)
-					out.data[i][j] = 1.0f;
-				else
-					out.data[i][j] = OperationNode.clampf((float)(Math.sin(denom) / denom), -1.0f, 1.0f);
-			}
-	    }
-	    ip.putPlane(A);
+		Plane out = ip.getResultPlane(A);
+		Kernels.get().sinc(out.data, A.data, ip.getW() * ip.getH(), freq, phase, preview);
+	    ip.putInputPlanes(out, A);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float freq = (float)this.frequency.getV();
+		float phase = (float)this.phase.getV();
+		return b.emit(Program.OP_SINC, _children[0].emit(b), -1, freq, phase);
+	}
 }
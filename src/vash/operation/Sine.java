@@ -20,6 +20,7 @@ package vash.operation;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.Seed;
 import vash.value.Bounded;
 import vash.value.Wrapping;
@@ -57,16 +58,20 @@ public class Sine extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
+		boolean preview = ip.getQuality() == Quality.PREVIEW;
 		float freq = (float)this.frequency.getV();
 		float phase = (float)this.phase.getV();
 		Plane A = _children[0].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-			for(int i = 0; i < ip.getW(); i++) {
-				out.data[i][j] = (float)Math.sin(A.data[i][j] * freq + phase);
-			}
-	    }
-	    ip.putPlane(A);
+		Plane out = ip.getResultPlane(A);
+		Kernels.get().sine(out.data, A.data, ip.getW() * ip.getH(), freq, phase, preview);
+	    ip.putInputPlanes(out, A);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float freq = (float)this.frequency.getV();
+		float phase = (float)this.phase.getV();
+		return b.emit(Program.OP_SINE, _children[0].emit(b), -1, freq, phase);
+	}
 }
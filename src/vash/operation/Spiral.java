@@ -20,6 +20,7 @@ package vash.operation;
 
 import vash.ImageParameters;
 import vash.Plane;
+import vash.Quality;
 import vash.Seed;
 import vash.value.Bounded;
 import vash.value.Position;
@@ -66,34 +67,17 @@ public class Spiral extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
-		float x0, y0, r, theta, tmp;
-		float twoOverSqrtTwo = (float)(2.0 / Math.sqrt(2.0));
+		boolean preview = ip.getQuality() == Quality.PREVIEW;
 		float x = (float)this.center.getX();
 		float y = (float)this.center.getY();
 		float n = (float)Math.floor(this.n.getV());
 		float b = (float)this.b.getV();
 
 		Plane V = _children[0].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-	    	y0 = Y[j] - y;
-			for(int i = 0; i < ip.getW(); i++) {
-				x0 = X[i] - x;
-				
-				r = (((x0 * x0) + (y0 * y0)) * twoOverSqrtTwo) - 1.0f;
-				theta = (float)(Math.atan2(y0, x0) / Math.PI);
-				tmp = V.data[i][j] - r + (b * (float)Math.pow(theta, n));
-				
-				while(tmp > 1.0f) tmp -= 1.0f;
-				while(tmp < -1.0f) tmp += 1.0f;
-				tmp = (float)Math.abs(Math.abs(tmp) - 0.5);
-				
-				out.data[i][j] = 4.0f * tmp - 1.0f;
-			}
-	    }
-		ip.putPlane(V);
+		Plane out = ip.getResultPlane(V);
+		Kernels.get().spiral(out.data, V.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x, y, n, b, preview);
+		ip.putInputPlanes(out, V);
 
 		return out;
 	}
@@ -119,4 +103,13 @@ public class Spiral extends OperationNode {
             }
     }
     */
+
+	@Override
+	int emit(Program.Builder b) {
+		float x = (float)this.center.getX();
+		float y = (float)this.center.getY();
+		float n = (float)Math.floor(this.n.getV());
+		float b0 = (float)this.b.getV();
+		return b.emit(Program.OP_SPIRAL, _children[0].emit(b), -1, x, y, n, b0);
+	}
 }
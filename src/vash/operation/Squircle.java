@@ -66,33 +66,31 @@ public class Squircle extends OperationNode {
 
 	@Override
 	public Plane compute(ImageParameters ip) {
-		float[] X = ip.getXValues();
-		float[] Y = ip.getYValues();
-		float x0, y0, a, b, numer, denom;
 		float x = (float)this.center.getX();
 		float y = (float)this.center.getY();
 		float r = (float)this.r.getV();
 		float n = (float)this.n.getV();
+		float denom = (float)Math.pow(r, n);
 
-		Plane A = _children[0].compute(ip);
-		Plane B = _children[1].compute(ip);
-		Plane out = ip.getPlane();
-	    for(int j = 0; j < ip.getH(); j++ ) {
-	    	y0 = Y[j] - y;
-			for(int i = 0; i < ip.getW(); i++) {
-				x0 = X[i] - x;
-				a = Math.abs(x0 - A.data[i][j]);
-				b = Math.abs(y0 - B.data[i][j]);
-				numer = (float)-(Math.pow(a, n) + Math.pow(b, n));
-				denom = (float)Math.pow(r, n);
-				if(denom == 0.0f)
-					out.data[i][j] = 1.0f;
-				else
-					out.data[i][j] = clampf(numer / denom, -1.0f, 1.0f);
-			}
-	    }
-	    ip.putPlane(A);
-	    ip.putPlane(B);
+		Plane[] in = computeChildren(ip);
+		Plane A = in[0];
+		Plane B = in[1];
+		Plane out = ip.getResultPlane(A, B);
+		Kernels.get().squircle(out.data, A.data, B.data, ip.getXValues(), ip.getYValues(), 0, ip.getW(), ip.getH(), 
+				x, y, n, denom);
+	    ip.putInputPlanes(out, A, B);
 	    return out;
 	}
+
+	@Override
+	int emit(Program.Builder b) {
+		float x = (float)this.center.getX();
+		float y = (float)this.center.getY();
+		float r = (float)this.r.getV();
+		float n = (float)this.n.getV();
+		float denom = (float)Math.pow(r, n);
+		int a = _children[0].emit(b);
+		int c = _children[1].emit(b);
+		return b.emit(Program.OP_SQUIRCLE, a, c, x, y, n, denom);
+	}
 }
@@ -112,6 +112,22 @@ public class Bounded implements Value {
 		return this.lower == l && this.upper == u;
 	}
 
+	/**
+	 * Two Boundeds are equal if they have exactly the same value and bounds.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Bounded))
+			return false;
+		Bounded o = (Bounded)other;
+		return Double.compare(v, o.v) == 0 && Double.compare(lower, o.lower) == 0 && Double.compare(upper, o.upper) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return (Double.hashCode(v) * 31 + Double.hashCode(lower)) * 31 + Double.hashCode(upper);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("B[%.2f]", v); 
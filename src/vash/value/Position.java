@@ -106,6 +106,22 @@ public class Position implements Value {
 		return true;
 	}
 	
+	/**
+	 * Two Positions are equal if they are at exactly the same place.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof Position))
+			return false;
+		Position o = (Position)other;
+		return Double.compare(v.x, o.v.x) == 0 && Double.compare(v.y, o.v.y) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode(v.x) * 31 + Double.hashCode(v.y);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("[%.2f,%.2f]", v.x, v.y); 